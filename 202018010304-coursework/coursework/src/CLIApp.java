@@ -7,7 +7,17 @@ public class CLIApp {
         // Create a scanner object for user input
         Scanner scanner = new Scanner(System.in);
         // Initialize the Numberle game model with specified settings
-        INumberleModel model = new NumberleModel(true, false, true);
+        NumberleModel model = new NumberleModel(true, false, true);
+        // An optional argument restricts the targets to one difficulty tier: easy, medium or hard
+        if (args.length > 0) {
+            try {
+                model.setDifficulty(DifficultyIndex.Difficulty.valueOf(args[0].toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                // Display the accepted values instead of a stack trace
+                System.out.println("Invalid difficulty. Please use easy, medium or hard.");
+                return;
+            }
+        }
         // Start a new game
         model.startNewGame();
         // Retrieve the target number for the current game
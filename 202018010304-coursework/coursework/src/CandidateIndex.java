@@ -0,0 +1,141 @@
+// CandidateIndex.java
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bitset index of a packed corpus, used to find the equations consistent with the feedback of a game without
+ * computing any feedback. For each position and symbol it holds the set of equations with that symbol at that
+ * position, and for each symbol the set of equations holding it anywhere. Feedback is decided per position, so:
+ * - CORRECT keeps the equations with the symbol at the position,
+ * - EXIST keeps the equations holding the symbol but not at the position,
+ * - WRONG keeps the equations not holding the symbol.
+ * The bits live in a LongBuffer, so an index read from a startup image is used in place.
+ */
+public final class CandidateIndex {
+    // Number of bitsets: one per position and symbol, then one per symbol
+    static final int SETS = (EquationCodec.MAX_SYMBOLS + 1) * EquationCodec.SYMBOL_COUNT;
+
+    private static CandidateIndex defaultIndex; // Index of the default corpus, built or mapped on first use
+
+    private final int size; // Number of equations indexed
+    private final int words; // Longs per bitset
+    private final LongBuffer bits; // SETS bitsets of words longs each
+
+    CandidateIndex(int size, LongBuffer bits) {
+        this.size = size;
+        this.words = wordsFor(size);
+        this.bits = bits;
+    }
+
+    /**
+     * Retrieves the index of the default corpus, taken from the startup image when there is one.
+     * @return The shared index, aligned with NumberleModel.getEquationsFromFile().
+     */
+    public static synchronized CandidateIndex getDefault() {
+        if (defaultIndex == null) {
+            StartupImage image = StartupImage.getDefault();
+            defaultIndex = image != null ? image.getCandidateIndex() : build(NumberleModel.getEquationsFromFile());
+        }
+        return defaultIndex;
+    }
+
+    /**
+     * Builds the index of a corpus.
+     * @param equations The corpus. Equations that cannot be packed are in no set, so they are never candidates.
+     * @return The index, equation i of the corpus is bit i.
+     */
+    public static CandidateIndex build(List<String> equations) {
+        int words = wordsFor(equations.size());
+        long[] bits = new long[SETS * words];
+        for (int i = 0; i < equations.size(); i++) {
+            int packed = EquationCodec.pack(equations.get(i));
+            if (packed == EquationCodec.NOT_PACKABLE) {
+                continue;
+            }
+            for (int position = 0; position < EquationCodec.MAX_SYMBOLS; position++) {
+                int code = EquationCodec.codeAt(packed, position);
+                if (code != 0) {
+                    bits[atPosition(position, code) * words + (i >>> 6)] |= 1L << i;
+                    bits[holding(code) * words + (i >>> 6)] |= 1L << i;
+                }
+            }
+        }
+        return new CandidateIndex(equations.size(), LongBuffer.wrap(bits));
+    }
+
+    // Retrieves the number of longs each bitset of an index of the given size takes.
+    static int wordsFor(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    private static int atPosition(int position, int code) {
+        return position * EquationCodec.SYMBOL_COUNT + code - 1;
+    }
+
+    private static int holding(int code) {
+        return EquationCodec.MAX_SYMBOLS * EquationCodec.SYMBOL_COUNT + code - 1;
+    }
+
+    // Retrieves the number of equations indexed.
+    public int size() {
+        return size;
+    }
+
+    // Retrieves the bits of the index, SETS bitsets one after the other.
+    LongBuffer getBits() {
+        return bits.duplicate();
+    }
+
+    /**
+     * Finds the equations consistent with every guess of a game.
+     * @param state The game.
+     * @return A bitset, bit i is set if equation i of the corpus is consistent.
+     */
+    public long[] filter(GameState state) {
+        // Start from the packable equations, the only ones holding any symbol
+        long[] result = new long[words];
+        for (int code = 1; code <= EquationCodec.SYMBOL_COUNT; code++) {
+            int base = holding(code) * words;
+            for (int w = 0; w < words; w++) {
+                result[w] |= bits.get(base + w);
+            }
+        }
+        for (int row = 0; row < state.getGuessCount(); row++) {
+            String guess = state.getGuess(row);
+            for (int position = 0; position < guess.length(); position++) {
+                int code = EquationCodec.symbolCode(guess.charAt(position));
+                int feedback = state.getFeedbackCode(row, position);
+                boolean placed = code != 0 && position < EquationCodec.MAX_SYMBOLS;
+                if (feedback == NumberleModel.State.CORRECT.ordinal()) {
+                    if (!placed) {
+                        Arrays.fill(result, 0L);
+                        return result;
+                    }
+                    and(result, atPosition(position, code), false);
+                } else if (feedback == NumberleModel.State.EXIST.ordinal()) {
+                    if (code == 0) {
+                        Arrays.fill(result, 0L);
+                        return result;
+                    }
+                    and(result, holding(code), false);
+                    if (placed) {
+                        and(result, atPosition(position, code), true);
+                    }
+                } else if (code != 0) {
+                    and(result, holding(code), true);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Intersects the result with a bitset of the index, or with its complement.
+    private void and(long[] result, int set, boolean complement) {
+        int base = set * words;
+        for (int w = 0; w < words; w++) {
+            long word = bits.get(base + w);
+            result[w] &= complement ? ~word : word;
+        }
+    }
+}
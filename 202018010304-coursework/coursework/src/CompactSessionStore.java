@@ -0,0 +1,313 @@
+// CompactSessionStore.java
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Session store that keeps each game as a fixed-width record in off-heap slabs instead of a NumberleModel
+ * object, so that millions of idle games cost RECORD_BYTES each and no heap at all.
+ * A record packs the target, up to MAX_ATTEMPTS guesses, their feedback, the remaining attempts and the flags.
+ * The ids of released records are kept on a stack outside the slabs and reused by later sessions.
+ * A lightweight SessionView is rehydrated over a record only while a request is being served; it reads and
+ * writes the record directly. Creating and releasing sessions is thread-safe, but a single session must be
+ * served by one thread at a time. Each record carries a generation that changes when it is released, so a view
+ * still held after its session was released fails instead of writing to the record.
+ */
+public class CompactSessionStore {
+    // Size of one session record in bytes
+    public static final int RECORD_BYTES = 48;
+
+    // Record layout: offsets of each field inside a record
+    private static final int TARGET = 0; // int, packed target
+    private static final int GUESSES = 4; // MAX_ATTEMPTS ints, packed guesses
+    private static final int FEEDBACK = GUESSES + 4 * INumberleModel.MAX_ATTEMPTS; // MAX_ATTEMPTS shorts, 2 bits per symbol
+    private static final int ATTEMPTS = FEEDBACK + 2 * INumberleModel.MAX_ATTEMPTS; // byte, remaining attempts
+    private static final int GUESS_COUNT = ATTEMPTS + 1; // byte, number of stored guesses
+    private static final int FLAGS = GUESS_COUNT + 1; // byte, see the flag constants below
+    private static final int GENERATION = FLAGS + 2; // int, incremented each time the record is released
+
+    private static final int FLAG_LIVE = 1;
+    private static final int FLAG_WON = 2;
+    private static final int FLAG_SHOW_ERROR = 4;
+    private static final int FLAG_SHOW_TARGET = 8;
+    private static final int FLAG_RANDOM = 16;
+
+    private static final int SLAB_SHIFT = 16; // Each slab holds 2^16 records
+    private static final int SLAB_RECORDS = 1 << SLAB_SHIFT;
+
+    private final int[] targets; // Packed corpus the targets are drawn from
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0]; // Replaced when a slab is added, so views read it without locking
+    private int nextUnused; // Next never-used session id
+    private int[] freeIds = new int[16]; // Stack of released session ids
+    private int freeCount; // Number of ids on the stack
+    private int sessionCount; // Number of live sessions
+
+    /**
+     * Creates a store drawing targets from the equations file. Equations that cannot be packed are skipped.
+     */
+    public CompactSessionStore() {
+        this(NumberleModel.getEquationsFromFile());
+    }
+
+    /**
+     * Creates a store drawing targets from the given equations. Equations that cannot be packed are skipped.
+     * @param equations The candidate targets.
+     */
+    public CompactSessionStore(List<String> equations) {
+        int[] packed = new int[equations.size()];
+        int count = 0;
+        for (String equation : equations) {
+            int code = EquationCodec.pack(equation);
+            if (code != EquationCodec.NOT_PACKABLE) {
+                packed[count++] = code;
+            }
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("No equation can be used as a target");
+        }
+        targets = Arrays.copyOf(packed, count);
+    }
+
+    /**
+     * Creates a session and starts a new game in it.
+     * @return The id of the session, to be passed to open and release.
+     */
+    public synchronized int createSession(boolean showErrorMessage, boolean showTarget, boolean isRandom) {
+        int sessionId;
+        if (freeCount > 0) {
+            sessionId = freeIds[--freeCount];
+        } else {
+            sessionId = nextUnused++;
+            if ((sessionId >>> SLAB_SHIFT) == slabs.length) {
+                ByteBuffer[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+                grown[slabs.length] = ByteBuffer.allocateDirect(SLAB_RECORDS * RECORD_BYTES);
+                slabs = grown;
+            }
+        }
+        int flags = FLAG_LIVE;
+        if (showErrorMessage) flags |= FLAG_SHOW_ERROR;
+        if (showTarget) flags |= FLAG_SHOW_TARGET;
+        if (isRandom) flags |= FLAG_RANDOM;
+        slabFor(sessionId).put(offsetOf(sessionId) + FLAGS, (byte) flags);
+        sessionCount++;
+        open(sessionId).startNewGame();
+        return sessionId;
+    }
+
+    /**
+     * Releases a session, its record is reused by a later session.
+     * @param sessionId The id returned by createSession.
+     */
+    public synchronized void release(int sessionId) {
+        ByteBuffer slab = checkLive(sessionId);
+        int base = offsetOf(sessionId);
+        slab.put(base + FLAGS, (byte) 0);
+        slab.putInt(base + GENERATION, slab.getInt(base + GENERATION) + 1);
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, 2 * freeCount);
+        }
+        freeIds[freeCount++] = sessionId;
+        sessionCount--;
+    }
+
+    // Retrieves the number of live sessions.
+    public synchronized int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * Rehydrates a model view over a session record, to be used while serving one request.
+     * @param sessionId The id returned by createSession.
+     * @return A view reading and writing the record directly, until the session is released.
+     * @throws IllegalArgumentException if the session does not exist or has been released.
+     */
+    public SessionView open(int sessionId) {
+        ByteBuffer slab = checkLive(sessionId);
+        int base = offsetOf(sessionId);
+        return new SessionView(slab, base, slab.getInt(base + GENERATION));
+    }
+
+    private ByteBuffer checkLive(int sessionId) {
+        ByteBuffer[] current = slabs;
+        int slab = sessionId >>> SLAB_SHIFT;
+        if (sessionId < 0 || slab >= current.length
+                || (current[slab].get(offsetOf(sessionId) + FLAGS) & FLAG_LIVE) == 0) {
+            throw new IllegalArgumentException("Unknown session: " + sessionId);
+        }
+        return current[slab];
+    }
+
+    private ByteBuffer slabFor(int sessionId) {
+        return slabs[sessionId >>> SLAB_SHIFT];
+    }
+
+    private static int offsetOf(int sessionId) {
+        return (sessionId & (SLAB_RECORDS - 1)) * RECORD_BYTES;
+    }
+
+    /**
+     * INumberleModel view over one session record. It holds no game state of its own, so it is cheap to create
+     * per request and can be dropped afterwards. Guesses longer than EquationCodec.MAX_SYMBOLS symbols cannot be
+     * stored and are rejected as invalid. Every method throws IllegalStateException once the session has been
+     * released, even if its record has been reused by another session.
+     */
+    public class SessionView implements INumberleModel {
+        private final ByteBuffer slab;
+        private final int base;
+        private final int generation; // Generation of the record when the view was opened
+
+        private SessionView(ByteBuffer slab, int base, int generation) {
+            this.slab = slab;
+            this.base = base;
+            this.generation = generation;
+        }
+
+        // Makes sure the session has not been released since the view was opened.
+        private void checkCurrent() {
+            if (slab.getInt(base + GENERATION) != generation || (slab.get(base + FLAGS) & FLAG_LIVE) == 0) {
+                throw new IllegalStateException("The session has been released");
+            }
+        }
+
+        private boolean hasFlag(int flag) {
+            checkCurrent();
+            return (slab.get(base + FLAGS) & flag) != 0;
+        }
+
+        private int packedTarget() {
+            checkCurrent();
+            return slab.getInt(base + TARGET);
+        }
+
+        // Selects a new target and clears the guesses, keeping the session flags.
+        @Override
+        public void initialize() {
+            checkCurrent();
+            int index = hasFlag(FLAG_RANDOM) ? ThreadLocalRandom.current().nextInt(targets.length) : 0;
+            slab.putInt(base + TARGET, targets[index]);
+            for (int row = 0; row < MAX_ATTEMPTS; row++) {
+                slab.putInt(base + GUESSES + 4 * row, 0);
+                slab.putShort(base + FEEDBACK + 2 * row, (short) 0);
+            }
+            slab.put(base + ATTEMPTS, (byte) MAX_ATTEMPTS);
+            slab.put(base + GUESS_COUNT, (byte) 0);
+            slab.put(base + FLAGS, (byte) (slab.get(base + FLAGS) & ~FLAG_WON));
+        }
+
+        // Processes the input with the same rules as NumberleModel.processInput, writing the result to the record.
+        @Override
+        public boolean processInput(String input) {
+            checkCurrent();
+            boolean result = false;
+            int packedGuess = EquationCodec.pack(input);
+            int[] expressions = NumberleModel.GetTheExpressions(input);
+            int remainingAttempts = slab.get(base + ATTEMPTS);
+            boolean gameWon = hasFlag(FLAG_WON);
+            if (expressions != null && expressions[0] == expressions[1] && packedGuess != EquationCodec.NOT_PACKABLE) {
+                // Attempts keep decreasing after the game is over, as in NumberleModel, but stop at the byte range
+                remainingAttempts = Math.max(remainingAttempts - 1, Byte.MIN_VALUE);
+                int row = slab.get(base + GUESS_COUNT);
+                if (row < MAX_ATTEMPTS) {
+                    slab.putInt(base + GUESSES + 4 * row, packedGuess);
+                    slab.putShort(base + FEEDBACK + 2 * row, (short) EquationCodec.feedback(packedTarget(), packedGuess));
+                    slab.put(base + GUESS_COUNT, (byte) (row + 1));
+                }
+                result = true;
+            }
+            if (remainingAttempts <= 0) {
+                gameWon = false;
+            }
+            if (packedGuess == packedTarget()) {
+                gameWon = true;
+            }
+            int flags = slab.get(base + FLAGS);
+            slab.put(base + ATTEMPTS, (byte) remainingAttempts);
+            slab.put(base + FLAGS, (byte) (gameWon ? flags | FLAG_WON : flags & ~FLAG_WON));
+            return result;
+        }
+
+        @Override
+        public boolean isGameOver() {
+            return getRemainingAttempts() <= 0 || isGameWon();
+        }
+
+        @Override
+        public boolean isGameWon() {
+            return hasFlag(FLAG_WON);
+        }
+
+        @Override
+        public String getTargetNumber() {
+            return EquationCodec.unpack(packedTarget());
+        }
+
+        @Override
+        public String[] getState(String target, String guess) {
+            checkCurrent();
+            return NumberleModel.compareGuess(target, guess);
+        }
+
+        @Override
+        public StringBuilder getCurrentGuess() {
+            checkCurrent();
+            return new StringBuilder("       ");
+        }
+
+        // Rehydrates an immutable snapshot from the record.
+        @Override
+        public GameState getGameState() {
+            GameState state = GameState.start(getTargetNumber(), "       ", MAX_ATTEMPTS); // Checks the session
+            int rows = slab.get(base + GUESS_COUNT);
+            for (int row = 0; row < rows; row++) {
+                String guess = EquationCodec.unpack(slab.getInt(base + GUESSES + 4 * row));
+                int feedback = slab.getShort(base + FEEDBACK + 2 * row);
+                byte[] codes = new byte[guess.length()];
+                for (int i = 0; i < codes.length; i++) {
+                    codes[i] = (byte) ((feedback >>> (2 * i)) & 0x3);
+                }
+                state = state.withGuess(guess, codes, MAX_ATTEMPTS - row - 1, false);
+            }
+            return state.withOutcome(getRemainingAttempts(), isGameWon());
+        }
+
+        // Searches on a snapshot of the record, so the view may be dropped while the search runs.
+        @Override
+        public CompletableFuture<String> suggestNextGuess(Duration budget) {
+            return HintSearch.suggest(getGameState(), budget);
+        }
+
+        @Override
+        public int getRemainingAttempts() {
+            checkCurrent();
+            return slab.get(base + ATTEMPTS);
+        }
+
+        @Override
+        public void startNewGame() {
+            initialize();
+        }
+
+        @Override
+        public boolean isShowErrorMessage() {
+            return hasFlag(FLAG_SHOW_ERROR);
+        }
+
+        @Override
+        public int getMaxAttempts() {
+            return MAX_ATTEMPTS;
+        }
+
+        @Override
+        public boolean isShowTarget() {
+            return hasFlag(FLAG_SHOW_TARGET);
+        }
+
+        @Override
+        public boolean isRandom() {
+            return hasFlag(FLAG_RANDOM);
+        }
+    }
+}
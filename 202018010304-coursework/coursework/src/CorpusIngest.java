@@ -0,0 +1,311 @@
+// CorpusIngest.java
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming pipeline turning a large, untrusted list of equations into a clean corpus for equations.txt.
+ * The input is read with NIO in fixed-size chunks and cut into batches of lines. Batches are normalised and
+ * validated in parallel with EquationEvaluator.checkStrict, then written back in input order by a single writer,
+ * which drops duplicates with a bitset over the packed encoding of every possible equation.
+ * Rejected lines go to a report with their line number and reason, followed by a summary of the counts.
+ * Memory stays bounded whatever the input size: lines longer than MAX_LINE_BYTES are rejected without being
+ * kept, at most two batches of BATCH_LINES lines per thread are in flight besides the one being read, and the
+ * duplicate bitset has a fixed size of 32 MiB.
+ * Usage: java CorpusIngest input-file corpus-file [report-file]
+ */
+public class CorpusIngest {
+    // Bytes read from the input at once
+    private static final int CHUNK_BYTES = 1 << 20;
+    // Lines validated together by one task
+    private static final int BATCH_LINES = 1 << 14;
+    // Longer lines are rejected as LINE_TOO_LONG
+    private static final int MAX_LINE_BYTES = 256;
+    // Marks an empty line in the results of a batch, it is skipped like in equations.txt
+    private static final int SKIPPED = Integer.MIN_VALUE;
+
+    // Reasons a line is rejected
+    public enum Reason {
+        BAD_CHARACTER, EQUALS_SIGN, MALFORMED, NUMBER_TOO_LARGE, DIVISION_BY_ZERO, DIVISION_REMAINDER, OVERFLOW,
+        UNBALANCED, // The sides do not have the same value
+        WRONG_LENGTH, // The equation does not have EquationCodec.MAX_SYMBOLS symbols
+        LINE_TOO_LONG, // The line is longer than MAX_LINE_BYTES bytes
+        DUPLICATE // The equation has already been accepted
+    }
+
+    // Lines read from the input, with the number of the first one
+    private static final class Batch {
+        final long firstLine;
+        final String[] lines; // null for lines too long to be kept
+
+        Batch(long firstLine, List<String> lines) {
+            this.firstLine = firstLine;
+            this.lines = lines.toArray(new String[0]);
+        }
+    }
+
+    // Validated batch: for each line, the packed equation, SKIPPED, or -1 - Reason ordinal
+    private static final class Result {
+        final Batch batch;
+        final int[] outcomes;
+
+        Result(Batch batch, int[] outcomes) {
+            this.batch = batch;
+            this.outcomes = outcomes;
+        }
+    }
+
+    private final int threads;
+    private final long[] seen = new long[1 << (4 * EquationCodec.MAX_SYMBOLS - 6)]; // One bit per packed equation
+    private final long[] rejected = new long[Reason.values().length];
+    private long accepted;
+
+    /**
+     * Creates a pipeline validating on the given number of threads.
+     * @param threads The number of validation threads.
+     */
+    public CorpusIngest(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Ingests an equation list.
+     * Usage: java CorpusIngest input-file corpus-file [report-file]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java CorpusIngest input-file corpus-file [report-file]");
+            return;
+        }
+        File report = new File(args.length > 2 ? args[2] : args[1] + ".rejected");
+        CorpusIngest ingest = new CorpusIngest(Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        ingest.run(new File(args[0]), new File(args[1]), report);
+        System.out.printf("Accepted %d equations, rejected %d lines in %.1f s, see %s%n",
+                ingest.getAccepted(), ingest.getRejected(), (System.nanoTime() - start) / 1e9, report);
+    }
+
+    /**
+     * Runs the pipeline. The outputs are written to temporary files and moved into place once the whole input has
+     * been read, so the corpus may be the input itself and is left untouched if ingestion fails.
+     * @param input The equation list to ingest.
+     * @param corpus Where to write the clean corpus, one equation per line in input order.
+     * @param report Where to write the rejected lines and the summary.
+     */
+    public void run(File input, File corpus, File report) throws IOException, InterruptedException {
+        File corpusTemporary = new File(corpus.getPath() + ".tmp");
+        File reportTemporary = new File(report.getPath() + ".tmp");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Result>> inFlight = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+             BufferedWriter corpusWriter = Files.newBufferedWriter(corpusTemporary.toPath(), StandardCharsets.UTF_8);
+             BufferedWriter reportWriter = Files.newBufferedWriter(reportTemporary.toPath(), StandardCharsets.UTF_8)) {
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES);
+            byte[] line = new byte[MAX_LINE_BYTES];
+            int lineLength = 0;
+            boolean tooLong = false;
+            List<String> lines = new ArrayList<>();
+            long lineNumber = 1;
+            while (channel.read(chunk) != -1) {
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    byte b = chunk.get();
+                    if (b == '\n') {
+                        lines.add(tooLong ? null : decode(line, lineLength));
+                        lineLength = 0;
+                        tooLong = false;
+                        // Cut the batch as soon as it is full, a chunk of short lines holds many batches
+                        if (lines.size() == BATCH_LINES) {
+                            lineNumber = submit(executor, inFlight, lineNumber, lines, corpusWriter, reportWriter);
+                        }
+                    } else if (lineLength < MAX_LINE_BYTES) {
+                        line[lineLength++] = b;
+                    } else {
+                        tooLong = true;
+                    }
+                }
+                chunk.clear();
+            }
+            if (lineLength > 0 || tooLong) {
+                lines.add(tooLong ? null : decode(line, lineLength));
+            }
+            submit(executor, inFlight, lineNumber, lines, corpusWriter, reportWriter);
+            while (!inFlight.isEmpty()) {
+                write(inFlight.poll(), corpusWriter, reportWriter);
+            }
+            writeSummary(reportWriter);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            Files.deleteIfExists(corpusTemporary.toPath());
+            Files.deleteIfExists(reportTemporary.toPath());
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        // Replace the outputs in one step each, the input may be one of them
+        Files.move(corpusTemporary.toPath(), corpus.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(reportTemporary.toPath(), report.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Queues a batch for validation, first writing the oldest batch if too many are in flight.
+    private long submit(ExecutorService executor, ArrayDeque<Future<Result>> inFlight, long lineNumber, List<String> lines,
+                        BufferedWriter corpusWriter, BufferedWriter reportWriter) throws IOException, InterruptedException {
+        Batch batch = new Batch(lineNumber, lines);
+        lines.clear();
+        while (inFlight.size() >= 2 * threads) {
+            write(inFlight.poll(), corpusWriter, reportWriter);
+        }
+        inFlight.add(executor.submit(() -> validate(batch)));
+        return lineNumber + batch.lines.length;
+    }
+
+    private static String decode(byte[] bytes, int length) {
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Runs on the validation threads: normalises and checks every line of a batch.
+    private static Result validate(Batch batch) {
+        int[] outcomes = new int[batch.lines.length];
+        StringBuilder normalised = new StringBuilder();
+        for (int i = 0; i < outcomes.length; i++) {
+            String line = batch.lines[i];
+            if (line == null) {
+                outcomes[i] = -1 - Reason.LINE_TOO_LONG.ordinal();
+                continue;
+            }
+            if (!normalise(line, normalised)) {
+                outcomes[i] = -1 - Reason.MALFORMED.ordinal();
+                continue;
+            }
+            if (normalised.length() == 0) {
+                outcomes[i] = SKIPPED;
+                continue;
+            }
+            EquationEvaluator.Outcome outcome = EquationEvaluator.checkStrict(normalised);
+            if (outcome != EquationEvaluator.Outcome.VALID) {
+                outcomes[i] = -1 - Reason.valueOf(outcome.name()).ordinal();
+            } else if (normalised.length() != EquationCodec.MAX_SYMBOLS) {
+                outcomes[i] = -1 - Reason.WRONG_LENGTH.ordinal();
+            } else {
+                outcomes[i] = EquationCodec.pack(normalised);
+            }
+        }
+        return new Result(batch, outcomes);
+    }
+
+    /**
+     * Normalises a line without changing what it says: drops whitespace and byte order marks around the equation
+     * and its symbols, turns any Unicode digit into its ASCII digit, and maps the typographic operators times,
+     * divide and minus sign (U+00D7, U+00F7, U+2212) to '*', '/' and '-'.
+     * Whitespace between two digits would join two numbers into one, so the line is refused instead.
+     * @param line The raw line.
+     * @param into Receives the normalised line.
+     * @return false if whitespace separates two digits.
+     */
+    static boolean normalise(String line, StringBuilder into) {
+        into.setLength(0);
+        boolean separated = false; // Whether whitespace was dropped since the last symbol
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (Character.isWhitespace(ch) || ch == '\uFEFF') {
+                separated = into.length() > 0;
+                continue;
+            }
+            if (Character.isDigit(ch)) {
+                if (separated && Character.isDigit(into.charAt(into.length() - 1))) {
+                    return false;
+                }
+                into.append((char) ('0' + Character.digit(ch, 10)));
+            } else if (ch == '\u00D7') {
+                into.append('*');
+            } else if (ch == '\u00F7') {
+                into.append('/');
+            } else if (ch == '\u2212') {
+                into.append('-');
+            } else {
+                into.append(ch);
+            }
+            separated = false;
+        }
+        return true;
+    }
+
+    // Writes a validated batch in input order, dropping duplicates of equations already accepted.
+    private void write(Future<Result> future, BufferedWriter corpusWriter, BufferedWriter reportWriter)
+            throws IOException, InterruptedException {
+        Result result;
+        try {
+            result = future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Validation failed", e.getCause());
+        }
+        for (int i = 0; i < result.outcomes.length; i++) {
+            int outcome = result.outcomes[i];
+            if (outcome == SKIPPED) {
+                continue;
+            }
+            Reason reason;
+            if (outcome >= 0) {
+                long mask = 1L << outcome;
+                if ((seen[outcome >>> 6] & mask) == 0) {
+                    seen[outcome >>> 6] |= mask;
+                    corpusWriter.write(EquationCodec.unpack(outcome));
+                    corpusWriter.newLine();
+                    accepted++;
+                    continue;
+                }
+                reason = Reason.DUPLICATE;
+            } else {
+                reason = Reason.values()[-1 - outcome];
+            }
+            rejected[reason.ordinal()]++;
+            String line = result.batch.lines[i];
+            reportWriter.write((result.batch.firstLine + i) + "\t" + reason + "\t"
+                    + (line != null ? line : "(longer than " + MAX_LINE_BYTES + " bytes)"));
+            reportWriter.newLine();
+        }
+    }
+
+    private void writeSummary(BufferedWriter reportWriter) throws IOException {
+        reportWriter.write("# accepted\t" + accepted);
+        reportWriter.newLine();
+        for (Reason reason : Reason.values()) {
+            reportWriter.write("# " + reason + "\t" + rejected[reason.ordinal()]);
+            reportWriter.newLine();
+        }
+    }
+
+    // Retrieves the number of equations written to the corpus.
+    public long getAccepted() {
+        return accepted;
+    }
+
+    // Retrieves the number of lines rejected for the given reason.
+    public long getRejected(Reason reason) {
+        return rejected[reason.ordinal()];
+    }
+
+    // Retrieves the number of lines rejected for any reason.
+    public long getRejected() {
+        long total = 0;
+        for (long count : rejected) {
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,375 @@
+// DifficultyIndex.java
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Scores the difficulty of every equation of the corpus and splits the corpus into easy, medium and hard tiers.
+ * The score of an equation combines three measures:
+ * - the number of guesses a reference strategy needs to find it,
+ * - the rarity of its symbols across the corpus,
+ * - whether its operators are ambiguous, i.e. reading it strictly left to right gives another value than
+ *   applying operator precedence.
+ * Scoring runs in parallel across all cores, and the results are cached in a file next to equations.txt so that
+ * they are only recomputed when the corpus changes. Each tier is a precomputed array, so selecting a target is O(1).
+ * Equations that EquationCodec cannot pack are left out of the tiers.
+ */
+public class DifficultyIndex {
+
+    // Difficulty tiers a target can be drawn from
+    public enum Difficulty {
+        EASY, MEDIUM, HARD
+    }
+
+    // The reference strategy only tries this many candidates as its next guess, to bound the cost on large corpora
+    private static final int MAX_PROBES = 64;
+    // Weight of the normalised symbol rarity in the score
+    private static final double RARITY_WEIGHT = 1.0;
+    // Score added when the operators of the equation are ambiguous
+    private static final double AMBIGUITY_WEIGHT = 0.5;
+    private static final String CACHE_HEADER = "# Numberle difficulty cache v1";
+    private static final String CACHE_FILE = "equations.difficulty";
+
+    private static DifficultyIndex defaultIndex; // Index of the equations file, built on first use
+
+    private final List<String> equations; // Corpus in file order
+    private final int[] guesses; // Guesses needed by the reference strategy, 0 for equations left out
+    private final double[] rarity; // Normalised symbol rarity between 0 and 1
+    private final boolean[] ambiguous; // Whether the operators are ambiguous
+    private final double[] scores; // Combined difficulty score
+    private final int[][] tiers; // Corpus indexes of the equations of each tier, indexed by Difficulty ordinal
+
+    private DifficultyIndex(List<String> equations, int[] guesses, double[] rarity, boolean[] ambiguous) {
+        this(equations, guesses, rarity, ambiguous, null);
+    }
+
+    /**
+     * Creates an index from precomputed measures, as read from a startup image.
+     * @param tiers The corpus indexes of each tier, or null to compute them from the scores.
+     */
+    DifficultyIndex(List<String> equations, int[] guesses, double[] rarity, boolean[] ambiguous, int[][] tiers) {
+        this.equations = equations;
+        this.guesses = guesses;
+        this.rarity = rarity;
+        this.ambiguous = ambiguous;
+        this.scores = new double[equations.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = guesses[i] + RARITY_WEIGHT * rarity[i] + (ambiguous[i] ? AMBIGUITY_WEIGHT : 0);
+        }
+        this.tiers = tiers != null ? tiers : buildTiers();
+    }
+
+    /**
+     * Retrieves the index of the equations file, taken from the startup image when there is one, otherwise loaded
+     * from the cache or computed on first use.
+     * @return The shared index.
+     */
+    public static synchronized DifficultyIndex getDefault() {
+        if (defaultIndex == null) {
+            StartupImage image = StartupImage.getDefault();
+            if (image != null) {
+                defaultIndex = image.getDifficultyIndex();
+            } else {
+                File corpusFile = NumberleModel.getEquationsFile();
+                defaultIndex = load(NumberleModel.getEquationsFromFile(), new File(corpusFile.getParentFile(), CACHE_FILE));
+            }
+        }
+        return defaultIndex;
+    }
+
+    /**
+     * Loads the index of a corpus from a cache file, or computes it and writes the cache if the file is missing or
+     * was computed for another corpus. A cache that cannot be written is ignored.
+     * @param equations The corpus.
+     * @param cacheFile The cache file.
+     * @return The index of the corpus.
+     */
+    public static DifficultyIndex load(List<String> equations, File cacheFile) {
+        String corpusId = corpusId(equations);
+        DifficultyIndex index = readCache(equations, cacheFile, corpusId);
+        if (index == null) {
+            index = build(equations);
+            try {
+                index.writeCache(cacheFile, corpusId);
+            } catch (IOException e) {
+                // The cache only saves time, the index is still usable
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Computes the index of a corpus, scoring the equations in parallel.
+     * @param equations The corpus.
+     * @return The index of the corpus.
+     */
+    public static DifficultyIndex build(List<String> equations) {
+        int size = equations.size();
+        int[] packed = new int[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = EquationCodec.pack(equations.get(i));
+        }
+        int[] playable = Arrays.stream(packed).filter(code -> code != EquationCodec.NOT_PACKABLE).toArray();
+        // The opening guess does not depend on the target, so it is chosen once for the whole corpus
+        int opening = playable.length == 0 ? 0 : bestProbe(playable, playable.length, new int[1 << 14], new int[1]);
+        double[] symbolRarity = symbolRarity(playable);
+
+        int[] guesses = new int[size];
+        double[] rarity = new double[size];
+        boolean[] ambiguous = new boolean[size];
+        ThreadLocal<int[]> marks = ThreadLocal.withInitial(() -> new int[1 << 14]);
+        ThreadLocal<int[]> generations = ThreadLocal.withInitial(() -> new int[1]);
+        IntStream.range(0, size).parallel().forEach(i -> {
+            if (packed[i] == EquationCodec.NOT_PACKABLE) {
+                return;
+            }
+            guesses[i] = solve(playable, packed[i], opening, marks.get(), generations.get());
+            rarity[i] = rarityOf(packed[i], symbolRarity);
+            ambiguous[i] = hasAmbiguousOperators(equations.get(i));
+        });
+        return new DifficultyIndex(equations, guesses, rarity, ambiguous);
+    }
+
+    /**
+     * Selects a random equation of the given tier in constant time.
+     * @param difficulty The tier.
+     * @param random The source of randomness.
+     * @return An equation of the tier, or null if the tier is empty.
+     */
+    public String select(Difficulty difficulty, Random random) {
+        int[] tier = tiers[difficulty.ordinal()];
+        return tier.length == 0 ? null : equations.get(tier[random.nextInt(tier.length)]);
+    }
+
+    // Retrieves the number of equations in the given tier.
+    public int getTierSize(Difficulty difficulty) {
+        return tiers[difficulty.ordinal()].length;
+    }
+
+    // Retrieves the corpus indexes of the equations in the given tier.
+    int[] getTierIndexes(Difficulty difficulty) {
+        return tiers[difficulty.ordinal()].clone();
+    }
+
+    // Retrieves the combined difficulty score of the equation at the given corpus index.
+    public double getScore(int index) {
+        return scores[index];
+    }
+
+    // Retrieves the number of guesses the reference strategy needs for the equation at the given corpus index.
+    public int getGuesses(int index) {
+        return guesses[index];
+    }
+
+    // Retrieves the normalised symbol rarity of the equation at the given corpus index.
+    public double getRarity(int index) {
+        return rarity[index];
+    }
+
+    // Checks if the operators of the equation at the given corpus index are ambiguous.
+    public boolean isAmbiguous(int index) {
+        return ambiguous[index];
+    }
+
+    // Sorts the playable equations by score and cuts them into three tiers of equal size.
+    private int[][] buildTiers() {
+        Integer[] order = IntStream.range(0, equations.size())
+                .filter(i -> guesses[i] > 0)
+                .boxed()
+                .toArray(Integer[]::new);
+        Arrays.sort(order, (a, b) -> Double.compare(scores[a], scores[b]));
+        Difficulty[] values = Difficulty.values();
+        int[][] result = new int[values.length][];
+        for (int t = 0; t < values.length; t++) {
+            int from = order.length * t / values.length;
+            int to = order.length * (t + 1) / values.length;
+            result[t] = new int[to - from];
+            for (int i = from; i < to; i++) {
+                result[t][i - from] = order[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Plays the reference strategy against a target: each turn it guesses the candidate that splits the remaining
+     * candidates into the most feedback classes, then keeps the candidates consistent with the feedback.
+     * @return The number of guesses until the target is guessed.
+     */
+    private static int solve(int[] corpus, int target, int opening, int[] marks, int[] generation) {
+        int[] candidates = corpus.clone();
+        int count = candidates.length;
+        int guess = opening;
+        int turns = 1;
+        while (guess != target) {
+            int feedback = EquationCodec.feedback(target, guess);
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (candidates[i] != guess && EquationCodec.feedback(candidates[i], guess) == feedback) {
+                    candidates[kept++] = candidates[i];
+                }
+            }
+            count = kept;
+            guess = bestProbe(candidates, count, marks, generation);
+            turns++;
+        }
+        return turns;
+    }
+
+    // Picks among the first MAX_PROBES candidates the one giving the most distinct feedbacks over all candidates.
+    private static int bestProbe(int[] candidates, int count, int[] marks, int[] generation) {
+        int best = candidates[0];
+        int bestClasses = 0;
+        for (int p = 0; p < Math.min(count, MAX_PROBES); p++) {
+            int probe = candidates[p];
+            int stamp = ++generation[0];
+            int classes = 0;
+            for (int i = 0; i < count; i++) {
+                int feedback = EquationCodec.feedback(candidates[i], probe);
+                if (marks[feedback] != stamp) {
+                    marks[feedback] = stamp;
+                    classes++;
+                }
+            }
+            if (classes > bestClasses) {
+                best = probe;
+                bestClasses = classes;
+            }
+        }
+        return best;
+    }
+
+    // Computes, for each symbol code, -log2 of the share of equations holding it.
+    private static double[] symbolRarity(int[] corpus) {
+        int[] counts = new int[EquationCodec.SYMBOL_COUNT + 1];
+        for (int packed : corpus) {
+            for (int code = 1; code <= EquationCodec.SYMBOL_COUNT; code++) {
+                if (EquationCodec.contains(packed, code)) {
+                    counts[code]++;
+                }
+            }
+        }
+        double[] rarity = new double[counts.length];
+        for (int code = 1; code < counts.length; code++) {
+            rarity[code] = counts[code] == 0 ? 0 : -Math.log((double) counts[code] / corpus.length) / Math.log(2);
+        }
+        return rarity;
+    }
+
+    // Averages the rarity of the distinct symbols of an equation, normalised by the rarest symbol of the corpus.
+    private static double rarityOf(int packed, double[] symbolRarity) {
+        double max = 0;
+        for (double value : symbolRarity) {
+            max = Math.max(max, value);
+        }
+        double sum = 0;
+        int distinct = 0;
+        for (int code = 1; code <= EquationCodec.SYMBOL_COUNT; code++) {
+            if (EquationCodec.contains(packed, code)) {
+                sum += symbolRarity[code];
+                distinct++;
+            }
+        }
+        return max == 0 || distinct == 0 ? 0 : sum / distinct / max;
+    }
+
+    // Checks if one side of the equation gives another value when read strictly left to right.
+    private static boolean hasAmbiguousOperators(String equation) {
+        int[] values = NumberleModel.GetTheExpressions(equation);
+        int equalIndex = equation.indexOf('=');
+        if (values == null || equalIndex < 0) {
+            return false;
+        }
+        Long left = leftToRight(equation.substring(0, equalIndex));
+        Long right = leftToRight(equation.substring(equalIndex + 1));
+        return left == null || right == null || left != values[0] || right != values[1];
+    }
+
+    // Evaluates an expression strictly left to right, returning null if a division leaves a remainder.
+    private static Long leftToRight(String expression) {
+        long value = 0;
+        long operand = 0;
+        char operator = '+';
+        for (int i = 0; i <= expression.length(); i++) {
+            char ch = i < expression.length() ? expression.charAt(i) : '+';
+            if (Character.isDigit(ch)) {
+                operand = operand * 10 + Character.digit(ch, 10);
+                continue;
+            }
+            switch (operator) {
+                case '+': value += operand; break;
+                case '-': value -= operand; break;
+                case '*': value *= operand; break;
+                default:
+                    if (operand == 0 || value % operand != 0) {
+                        return null;
+                    }
+                    value /= operand;
+            }
+            operator = ch;
+            operand = 0;
+        }
+        return value;
+    }
+
+    // Identifies a corpus by its size and a checksum of its equations.
+    private static String corpusId(List<String> equations) {
+        CRC32 crc = new CRC32();
+        for (String equation : equations) {
+            crc.update(equation.getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        return equations.size() + " " + Long.toHexString(crc.getValue());
+    }
+
+    // Reads the cache file, returning null if it is missing, unreadable or computed for another corpus.
+    private static DifficultyIndex readCache(List<String> equations, File cacheFile, String corpusId) {
+        NumberleModel.countFileAccess();
+        if (!cacheFile.exists()) {
+            return null;
+        }
+        int size = equations.size();
+        int[] guesses = new int[size];
+        double[] rarity = new double[size];
+        boolean[] ambiguous = new boolean[size];
+        try (BufferedReader reader = new BufferedReader(new FileReader(cacheFile))) {
+            if (!CACHE_HEADER.equals(reader.readLine()) || !corpusId.equals(reader.readLine())) {
+                return null;
+            }
+            for (int i = 0; i < size; i++) {
+                String[] fields = reader.readLine().split(" ");
+                guesses[i] = Integer.parseInt(fields[0]);
+                rarity[i] = Double.parseDouble(fields[1]);
+                ambiguous[i] = Boolean.parseBoolean(fields[2]);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A damaged cache is simply recomputed
+            return null;
+        }
+        return new DifficultyIndex(equations, guesses, rarity, ambiguous);
+    }
+
+    // Writes the cache file: a header, the corpus id, then one line per equation in corpus order.
+    private void writeCache(File cacheFile, String corpusId) throws IOException {
+        NumberleModel.countFileAccess();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(cacheFile))) {
+            writer.write(CACHE_HEADER);
+            writer.newLine();
+            writer.write(corpusId);
+            writer.newLine();
+            for (int i = 0; i < equations.size(); i++) {
+                writer.write(guesses[i] + " " + rarity[i] + " " + ambiguous[i]);
+                writer.newLine();
+            }
+        }
+    }
+}
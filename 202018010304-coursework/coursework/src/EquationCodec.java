@@ -0,0 +1,138 @@
+// EquationCodec.java
+
+/**
+ * Packs equations of up to seven symbols into a single int, four bits per symbol.
+ * Symbol codes are 1 to 15 ('0'-'9', '+', '-', '*', '/', '='), code 0 marks an empty position,
+ * and the first symbol sits in the lowest bits. A packed equation is never negative, so
+ * NOT_PACKABLE can be used as a sentinel.
+ */
+public final class EquationCodec {
+    // Maximum number of symbols an equation may have to be packed
+    public static final int MAX_SYMBOLS = 7;
+    // Number of distinct symbols, not counting the empty code
+    public static final int SYMBOL_COUNT = 15;
+    // Returned by pack when the text cannot be encoded
+    public static final int NOT_PACKABLE = -1;
+
+    private static final char[] SYMBOLS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '-', '*', '/', '='};
+
+    private EquationCodec() {
+    }
+
+    /**
+     * Returns the code of a symbol.
+     * @param ch The symbol.
+     * @return The code between 1 and 15, or 0 if the character is not a Numberle symbol.
+     */
+    public static int symbolCode(char ch) {
+        if (ch >= '0' && ch <= '9') {
+            return ch - '0' + 1;
+        }
+        switch (ch) {
+            case '+': return 11;
+            case '-': return 12;
+            case '*': return 13;
+            case '/': return 14;
+            case '=': return 15;
+            default: return 0;
+        }
+    }
+
+    // Returns the symbol of a code between 1 and 15.
+    public static char symbol(int code) {
+        return SYMBOLS[code - 1];
+    }
+
+    /**
+     * Packs an equation.
+     * @param text The equation, one to seven Numberle symbols.
+     * @return The packed equation, or NOT_PACKABLE if the text is empty, too long or holds another character.
+     */
+    public static int pack(CharSequence text) {
+        int length = text.length();
+        if (length == 0 || length > MAX_SYMBOLS) {
+            return NOT_PACKABLE;
+        }
+        int packed = 0;
+        for (int i = 0; i < length; i++) {
+            int code = symbolCode(text.charAt(i));
+            if (code == 0) {
+                return NOT_PACKABLE;
+            }
+            packed |= code << (4 * i);
+        }
+        return packed;
+    }
+
+    // Returns the code of the symbol at the given position of a packed equation, 0 past its end.
+    public static int codeAt(int packed, int position) {
+        return (packed >>> (4 * position)) & 0xF;
+    }
+
+    // Returns the number of symbols of a packed equation.
+    public static int length(int packed) {
+        int length = 0;
+        while (length < MAX_SYMBOLS && codeAt(packed, length) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Unpacks an equation.
+     * @param packed A value returned by pack.
+     * @return The equation text.
+     */
+    public static String unpack(int packed) {
+        int length = length(packed);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = symbol(codeAt(packed, i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Computes the feedback of a packed guess against a packed target, with the same rules as
+     * NumberleModel.getFeedbackCodes, packed two bits per symbol.
+     */
+    public static int feedback(int target, int guess) {
+        int symbols = symbolMask(target);
+        int feedback = 0;
+        for (int i = 0; i < MAX_SYMBOLS; i++) {
+            int code = codeAt(guess, i);
+            if (code == 0) {
+                break;
+            }
+            NumberleModel.State state;
+            if (code == codeAt(target, i)) {
+                state = NumberleModel.State.CORRECT;
+            } else if ((symbols & (1 << code)) != 0) {
+                state = NumberleModel.State.EXIST;
+            } else {
+                state = NumberleModel.State.WRONG;
+            }
+            feedback |= state.ordinal() << (2 * i);
+        }
+        return feedback;
+    }
+
+    // Returns a mask with bit c set for each symbol code c held by a packed equation.
+    public static int symbolMask(int packed) {
+        int mask = 0;
+        for (int i = 0; i < MAX_SYMBOLS; i++) {
+            mask |= 1 << codeAt(packed, i);
+        }
+        return mask & ~1;
+    }
+
+    // Checks if a packed equation holds the given symbol code.
+    public static boolean contains(int packed, int code) {
+        for (int i = 0; i < MAX_SYMBOLS; i++) {
+            if (codeAt(packed, i) == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
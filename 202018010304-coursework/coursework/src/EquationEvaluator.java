@@ -0,0 +1,208 @@
+// EquationEvaluator.java
+
+/**
+ * Allocation-free evaluator for Numberle equations.
+ * It follows the rules of the original NumberleModel evaluator step by step: each side must start and end with a
+ * digit, operators cannot follow each other, '*' and '/' are applied in passes before '+' and '-', a division by zero
+ * or with a remainder is invalid, literals must fit in an int and intermediate results wrap like int arithmetic.
+ * Failures are reported as an Outcome instead of exceptions, and the numbers and operators of a side are parsed
+ * into per-thread scratch arrays, so checking an equation allocates nothing once the arrays have grown to size.
+ * checkStrict applies the same rules but rejects intermediate results that overflow an int, for corpus ingestion.
+ */
+public final class EquationEvaluator {
+
+    // Result of checking an equation
+    public enum Outcome {
+        VALID, // Both sides are well formed and have the same value
+        BAD_CHARACTER, // A character is neither a digit, an operator nor '='
+        EQUALS_SIGN, // There is not exactly one '='
+        MALFORMED, // A side is empty, does not start or end with a digit, or has two operators in a row
+        NUMBER_TOO_LARGE, // A literal does not fit in an int
+        DIVISION_BY_ZERO, // A side divides by zero
+        DIVISION_REMAINDER, // A side divides with a remainder
+        OVERFLOW, // An intermediate result does not fit in an int, only reported by checkStrict
+        UNBALANCED // Both sides are well formed but their values differ
+    }
+
+    // Per-thread parsing buffers and results
+    private static final class Scratch {
+        int[] numbers = new int[8];
+        char[] operators = new char[8];
+        int value; // Value of the last side evaluated
+        int left, right; // Values of the sides of the last equation evaluated
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private EquationEvaluator() {
+    }
+
+    /**
+     * Checks an equation.
+     * @param equation The equation.
+     * @return VALID if the equation is well formed and balanced, otherwise the first problem found.
+     */
+    public static Outcome check(CharSequence equation) {
+        return check(equation, false);
+    }
+
+    /**
+     * Checks an equation like check, but without letting intermediate results wrap around.
+     * @param equation The equation.
+     * @return VALID if the equation is well formed, balanced and free of overflow, otherwise the first problem found.
+     */
+    public static Outcome checkStrict(CharSequence equation) {
+        return check(equation, true);
+    }
+
+    private static Outcome check(CharSequence equation, boolean strict) {
+        Scratch scratch = SCRATCH.get();
+        Outcome outcome = evaluate(equation, strict, scratch);
+        if (outcome == Outcome.VALID && scratch.left != scratch.right) {
+            return Outcome.UNBALANCED;
+        }
+        return outcome;
+    }
+
+    /**
+     * Evaluates both sides of an equation.
+     * @param equation The equation.
+     * @return The values of the left and right sides, or null if the equation is not well formed.
+     */
+    public static int[] evaluateSides(CharSequence equation) {
+        Scratch scratch = SCRATCH.get();
+        if (evaluate(equation, false, scratch) != Outcome.VALID) {
+            return null;
+        }
+        return new int[]{scratch.left, scratch.right};
+    }
+
+    private static boolean isOperator(char ch) {
+        return ch == '+' || ch == '-' || ch == '*' || ch == '/';
+    }
+
+    // Validates the characters, splits the equation at '=' and evaluates both sides into the scratch.
+    private static Outcome evaluate(CharSequence equation, boolean strict, Scratch scratch) {
+        int length = equation.length();
+        int equalIndex = -1;
+        int equalCount = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = equation.charAt(i);
+            if (ch == '=') {
+                equalIndex = i;
+                equalCount++;
+            } else if (!(Character.isDigit(ch) || isOperator(ch))) {
+                return Outcome.BAD_CHARACTER;
+            }
+        }
+        if (equalCount != 1) {
+            return Outcome.EQUALS_SIGN;
+        }
+        Outcome outcome = evaluateSide(equation, 0, equalIndex, strict, scratch);
+        if (outcome != Outcome.VALID) {
+            return outcome;
+        }
+        scratch.left = scratch.value;
+        outcome = evaluateSide(equation, equalIndex + 1, length, strict, scratch);
+        scratch.right = scratch.value;
+        return outcome;
+    }
+
+    // Evaluates the characters between from (inclusive) and to (exclusive), storing the value in the scratch.
+    // In strict mode a result that does not fit in an int is an OVERFLOW instead of wrapping around.
+    private static Outcome evaluateSide(CharSequence text, int from, int to, boolean strict, Scratch scratch) {
+        if (from == to) {
+            return Outcome.MALFORMED;
+        }
+        // Ensure the first and last characters are digits
+        if (!Character.isDigit(text.charAt(from)) || !Character.isDigit(text.charAt(to - 1))) {
+            return Outcome.MALFORMED;
+        }
+        if (scratch.numbers.length < to - from) {
+            scratch.numbers = new int[to - from];
+            scratch.operators = new char[to - from];
+        }
+        int[] numbers = scratch.numbers;
+        char[] operators = scratch.operators;
+
+        // Parse the side into numbers and operators
+        int numberCount = 0;
+        int operatorCount = 0;
+        long literal = 0;
+        boolean lastNotSymbol = false;
+        for (int i = from; i < to; i++) {
+            char ch = text.charAt(i);
+            if (isOperator(ch)) {
+                if (!lastNotSymbol) {
+                    return Outcome.MALFORMED;
+                }
+                lastNotSymbol = false;
+                operators[operatorCount++] = ch;
+                numbers[numberCount++] = (int) literal;
+                literal = 0;
+            } else {
+                lastNotSymbol = true;
+                literal = literal * 10 + Character.digit(ch, 10);
+                if (literal > Integer.MAX_VALUE) {
+                    return Outcome.NUMBER_TOO_LARGE;
+                }
+            }
+        }
+        numbers[numberCount++] = (int) literal;
+
+        // Apply '*' and '/' in passes, removing each operator once applied, as the original evaluator did
+        while (containsMultiplicative(operators, operatorCount)) {
+            for (int i = 0; i < operatorCount; i++) {
+                char operator = operators[i];
+                if (operator == '*' || operator == '/') {
+                    int leftValue = numbers[i];
+                    int rightValue = numbers[i + 1];
+                    int newValue;
+                    if (operator == '*') {
+                        long product = (long) leftValue * rightValue;
+                        if (strict && product != (int) product) {
+                            return Outcome.OVERFLOW;
+                        }
+                        newValue = (int) product;
+                    } else {
+                        if (rightValue == 0) {
+                            return Outcome.DIVISION_BY_ZERO;
+                        }
+                        if (leftValue % rightValue != 0) {
+                            return Outcome.DIVISION_REMAINDER;
+                        }
+                        newValue = leftValue / rightValue;
+                    }
+                    System.arraycopy(operators, i + 1, operators, i, operatorCount - i - 1);
+                    operatorCount--;
+                    numbers[i] = newValue;
+                    System.arraycopy(numbers, i + 2, numbers, i + 1, numberCount - i - 2);
+                    numberCount--;
+                }
+            }
+        }
+
+        // Apply '+' and '-' from left to right
+        long value = numbers[0];
+        for (int i = 0; i < operatorCount; i++) {
+            value = operators[i] == '+' ? value + numbers[i + 1] : value - numbers[i + 1];
+            if (value != (int) value) {
+                if (strict) {
+                    return Outcome.OVERFLOW;
+                }
+                value = (int) value;
+            }
+        }
+        scratch.value = (int) value;
+        return Outcome.VALID;
+    }
+
+    private static boolean containsMultiplicative(char[] operators, int count) {
+        for (int i = 0; i < count; i++) {
+            if (operators[i] == '*' || operators[i] == '/') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
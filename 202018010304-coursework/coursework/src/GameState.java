@@ -0,0 +1,124 @@
+// GameState.java
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of a single Numberle game: the hash of the target, the submitted guess rows with their
+ * feedback codes, the remaining attempts and the outcome. The target itself stays in the model, so a snapshot can be
+ * handed to any reader without revealing it.
+ * The model publishes a new snapshot every time the game changes (copy-on-write), so views,
+ * controllers and background threads can read one consistent state without locking.
+ */
+public final class GameState {
+
+    // Overall outcome of the game described by a snapshot
+    public enum Status {
+        IN_PROGRESS, WON, LOST
+    }
+
+    private final int targetHash; // Hash of the target expression of the game.
+    private final String currentGuess; // Guess in progress, kept for INumberleModel.getCurrentGuess().
+    private final String[] guesses; // Accepted guesses, one per row, in submission order.
+    private final byte[][] feedback; // Feedback codes per row, each code is a NumberleModel.State ordinal.
+    private final int remainingAttempts; // The number of remaining attempts.
+    private final boolean gameWon; // Whether the target has been guessed.
+
+    private GameState(int targetHash, String currentGuess, String[] guesses, byte[][] feedback,
+                      int remainingAttempts, boolean gameWon) {
+        this.targetHash = targetHash;
+        this.currentGuess = currentGuess;
+        this.guesses = guesses;
+        this.feedback = feedback;
+        this.remainingAttempts = remainingAttempts;
+        this.gameWon = gameWon;
+    }
+
+    /**
+     * Creates the snapshot of a freshly started game.
+     * @param target The target expression, only its hash is kept.
+     * @param currentGuess The initial guess in progress.
+     * @param attempts The number of attempts the player starts with.
+     * @return A snapshot with no guess rows.
+     */
+    public static GameState start(String target, String currentGuess, int attempts) {
+        return new GameState(target.hashCode(), currentGuess, new String[0], new byte[0][], attempts, false);
+    }
+
+    /**
+     * Returns a copy of this snapshot with one more guess row appended. This snapshot is left untouched.
+     * @param guess The accepted guess.
+     * @param codes The feedback codes of the guess, the array is copied.
+     * @param remainingAttempts The remaining attempts after the guess.
+     * @param gameWon Whether the game is won after the guess.
+     * @return The new snapshot.
+     */
+    public GameState withGuess(String guess, byte[] codes, int remainingAttempts, boolean gameWon) {
+        String[] newGuesses = Arrays.copyOf(guesses, guesses.length + 1);
+        newGuesses[guesses.length] = guess;
+        byte[][] newFeedback = Arrays.copyOf(feedback, feedback.length + 1);
+        newFeedback[feedback.length] = codes.clone();
+        return new GameState(targetHash, currentGuess, newGuesses, newFeedback, remainingAttempts, gameWon);
+    }
+
+    /**
+     * Returns a copy of this snapshot with the outcome replaced and the guess rows shared.
+     * @param remainingAttempts The new remaining attempts.
+     * @param gameWon The new won flag.
+     * @return The new snapshot.
+     */
+    public GameState withOutcome(int remainingAttempts, boolean gameWon) {
+        return new GameState(targetHash, currentGuess, guesses, feedback, remainingAttempts, gameWon);
+    }
+
+    // Retrieves the hash of the target, for readers that must identify a game without revealing it.
+    public int getTargetHash() {
+        return targetHash;
+    }
+
+    // Retrieves the guess in progress.
+    public String getCurrentGuess() {
+        return currentGuess;
+    }
+
+    // Retrieves the number of accepted guess rows.
+    public int getGuessCount() {
+        return guesses.length;
+    }
+
+    // Retrieves the accepted guess of the given row.
+    public String getGuess(int row) {
+        return guesses[row];
+    }
+
+    // Retrieves the feedback code of one character of the given row, as a NumberleModel.State ordinal.
+    public int getFeedbackCode(int row, int column) {
+        return feedback[row][column];
+    }
+
+    // Retrieves a copy of the feedback codes of the given row.
+    public byte[] getFeedbackCodes(int row) {
+        return feedback[row].clone();
+    }
+
+    // Retrieves the number of remaining attempts.
+    public int getRemainingAttempts() {
+        return remainingAttempts;
+    }
+
+    // Checks if the game has been won.
+    public boolean isGameWon() {
+        return gameWon;
+    }
+
+    // Checks if the game is over, either won or out of attempts.
+    public boolean isGameOver() {
+        return remainingAttempts <= 0 || gameWon;
+    }
+
+    // Retrieves the overall outcome of the game.
+    public Status getStatus() {
+        if (gameWon) {
+            return Status.WON;
+        }
+        return remainingAttempts <= 0 ? Status.LOST : Status.IN_PROGRESS;
+    }
+}
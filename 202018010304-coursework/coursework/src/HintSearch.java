@@ -0,0 +1,144 @@
+// HintSearch.java
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Anytime search for the next guess, run on a small bounded pool of background threads so that callers such as
+ * the Swing event thread never block.
+ * The search only uses what the player knows: the guesses of a GameState and their feedback. It starts from the
+ * first equation still consistent with that feedback, then keeps looking for a guess that leaves fewer candidates
+ * on average, until every candidate has been tried, the time budget expires or the returned future is cancelled.
+ */
+public final class HintSearch {
+    // Number of background threads running searches
+    private static final int THREADS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+    // Number of searches that may wait for a thread before new ones are rejected
+    private static final int QUEUE_CAPACITY = 16;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                Thread thread = new Thread(runnable, "numberle-hint");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static int[] corpus; // Packed equations file, aligned with CandidateIndex.getDefault(), loaded on first use
+    private static volatile CountDownLatch startGate; // Searches wait for it before starting, null lets them start at once
+
+    private HintSearch() {
+    }
+
+    /**
+     * Starts a search for the next guess of a game.
+     * @param state The game to suggest a guess for.
+     * @param budget The time the search may take, counted from this call.
+     * @return A future completed with the best guess found, or null if no equation fits the feedback so far.
+     *         It completes exceptionally with a RejectedExecutionException if too many searches are pending.
+     *         Cancelling it stops the search.
+     */
+    public static CompletableFuture<String> suggest(GameState state, Duration budget) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        long deadline = System.nanoTime() + budget.toNanos();
+        try {
+            EXECUTOR.execute(() -> search(state, deadline, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Holds every search that starts from now on until the gate is opened, so that tests can act while a search is
+     * known to be pending.
+     * @param gate The latch searches wait for, or null to let them start at once.
+     */
+    static void setStartGate(CountDownLatch gate) {
+        startGate = gate;
+    }
+
+    private static synchronized int[] getCorpus() {
+        if (corpus == null) {
+            List<String> equations = NumberleModel.getEquationsFromFile();
+            corpus = equations.stream().mapToInt(EquationCodec::pack).toArray();
+        }
+        return corpus;
+    }
+
+    private static void search(GameState state, long deadline, CompletableFuture<String> future) {
+        CountDownLatch gate = startGate;
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+                return;
+            }
+        }
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            int[] candidates = consistentCandidates(state);
+            if (candidates.length == 0) {
+                future.complete(null);
+                return;
+            }
+            // Any consistent candidate is a valid answer, so the search can stop at any time from here
+            int best = candidates[0];
+            long bestCost = Long.MAX_VALUE;
+            int[] classSizes = new int[1 << 14];
+            for (int probe : candidates) {
+                if (future.isDone() || System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+                long cost = expectedRemaining(probe, candidates, classSizes);
+                if (cost < bestCost) {
+                    best = probe;
+                    bestCost = cost;
+                }
+            }
+            future.complete(EquationCodec.unpack(best));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    // Keeps the corpus equations that would have produced the feedback of every guess of the game.
+    private static int[] consistentCandidates(GameState state) {
+        int[] all = getCorpus();
+        long[] consistent = CandidateIndex.getDefault().filter(state);
+        int[] candidates = new int[all.length];
+        int count = 0;
+        for (int w = 0; w < consistent.length; w++) {
+            for (long word = consistent[w]; word != 0; word &= word - 1) {
+                int candidate = all[(w << 6) + Long.numberOfTrailingZeros(word)];
+                // The corpus stays aligned with the index, so lines that cannot be packed are dropped here
+                if (candidate != EquationCodec.NOT_PACKABLE) {
+                    candidates[count++] = candidate;
+                }
+            }
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    // Sum of the squared feedback class sizes: proportional to the expected number of candidates left by the probe.
+    private static long expectedRemaining(int probe, int[] candidates, int[] classSizes) {
+        long cost = 0;
+        for (int candidate : candidates) {
+            int size = ++classSizes[EquationCodec.feedback(candidate, probe)];
+            cost += 2L * size - 1;
+        }
+        for (int candidate : candidates) {
+            classSizes[EquationCodec.feedback(candidate, probe)] = 0;
+        }
+        return cost;
+    }
+}
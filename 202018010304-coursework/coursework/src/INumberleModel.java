@@ -1,3 +1,6 @@
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The INumberleModel interface defines the contract for the Numberle game model, providing a comprehensive set of methods
  * that encapsulate the core functionalities required for the game's operation. This interface serves as a blueprint for
@@ -26,9 +29,15 @@ public interface INumberleModel {
     // Generates a state array representing the result of comparing a guess to the target
     String[] getState(String target, String guess);
 
-    // Gets the current guess in progress
+    // Gets a copy of the current guess in progress
     StringBuilder getCurrentGuess();
 
+    // Gets an immutable snapshot of the whole game state, safe to read from any thread without locking
+    GameState getGameState();
+
+    // Searches for a suggested next guess in the background for at most the given budget, without blocking the caller
+    CompletableFuture<String> suggestNextGuess(Duration budget);
+
     // Return remaining attempts number
     int getRemainingAttempts();
 
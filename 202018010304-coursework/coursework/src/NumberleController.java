@@ -1,4 +1,6 @@
 // NumberleController.java
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 
 // Controller class for the Numberle game
 public class NumberleController {
@@ -32,6 +34,14 @@ public class NumberleController {
     public StringBuilder getCurrentGuess() {
         return model.getCurrentGuess();
     }
+    // Retrieves an immutable snapshot of the game state
+    public GameState getGameState() {
+        return model.getGameState();
+    }
+    // Requests a suggested next guess, completed in the background within the given budget
+    public CompletableFuture<String> suggestNextGuess(Duration budget) {
+        return model.suggestNextGuess(budget);
+    }
     // Retrieves the number of remaining attempts
     public int getRemainingAttempts() {
         return model.getRemainingAttempts();
@@ -1,22 +1,31 @@
 // NumberleModel.java
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implements the logic for the Numberle game, adhering to the INumberleModel interface.
  * This class manages the game state, including the target number, current guess, remaining attempts,
  * and game outcome. It also handles the logic for processing player inputs and determining the game's
  * progress and result.
+ * The game state is held in an immutable GameState snapshot published through a single volatile field.
+ * Updates are serialised and replace the snapshot (copy-on-write), so readers never lock and never see
+ * a partially updated game.
  */
 public class NumberleModel extends Observable implements INumberleModel {
 
-    private String targetNumber; //Current target expression that players aim to guess.
-    private StringBuilder currentGuess; // StringBuilder that temporarily stores the current guess of player.
-    private int remainingAttempts; //The number of remaining attempts guess for the player.
-    private boolean gameWon; // A boolean flag to express whether the player get win.
+    private volatile GameState state; //Current snapshot of the game, replaced on every change.
+    private volatile String targetNumber; //Target of the current game, the snapshot only holds its hash.
+    private CompletableFuture<String> pendingHint; //Last hint search started, cancelled when the game moves on.
+    private static List<String> equationsCache; //Equations read from the file, shared by every game after the first read.
+    private static final AtomicInteger fileAccesses = new AtomicInteger(); //Number of times a game data file has been read or written.
     private boolean showErrorMessage,showTarget,isRandom; //Flags used to configure the display and behavior of the game.
+    private DifficultyIndex.Difficulty difficulty; //Tier random targets are drawn from, null to draw from the whole list.
 
     /**
      * isShowErrorMessage() is to indicate if it needs an error message display to users.
@@ -44,6 +53,23 @@ public class NumberleModel extends Observable implements INumberleModel {
         return isRandom;
     }
 
+    /**
+     * Restricts the random selection of target equations to one difficulty tier.
+     * It has no effect when isRandom is false.
+     * @param difficulty The tier to draw targets from, or null to draw from the whole list of equations.
+     */
+    public void setDifficulty(DifficultyIndex.Difficulty difficulty) {
+        this.difficulty = difficulty;
+    }
+
+    /**
+     * Retrieves the difficulty tier random targets are drawn from.
+     * @return The tier, or null if targets are drawn from the whole list of equations.
+     */
+    public DifficultyIndex.Difficulty getDifficulty() {
+        return difficulty;
+    }
+
     /**
      * Constructor of the NumberleModel with specified game settings.
      */
@@ -52,12 +78,48 @@ public class NumberleModel extends Observable implements INumberleModel {
         this.showTarget = showTarget; //indicate if the target equation will be shown at the start of the game.
         this.isRandom = isRandom; //indicate if the target equation will be chosen randomly from the list of equations.
     }
+    /**
+     * Returns the equations of the file. The file is read once, later calls return the same unmodifiable list,
+     * so starting a game does no file I/O after the first one.
+     * When an up-to-date startup image exists, the equations are taken from it and the file is not parsed.
+     *
+     * @return A list of equations read from the file.
+     */
+    static synchronized List<String> getEquationsFromFile() {
+        if (equationsCache == null) {
+            StartupImage image = StartupImage.getDefault();
+            if (image != null) {
+                equationsCache = image.getEquations();
+            } else {
+                equationsCache = Collections.unmodifiableList(readEquationsFile());
+            }
+        }
+        return equationsCache;
+    }
+
+    // Locates the equations file, in the working directory or in its "src" directory.
+    static File getEquationsFile() {
+        File file = new File("equations.txt");
+        return file.exists() ? file : new File("src/equations.txt");
+    }
+
+    // Records an access to a game data file: the equations file, the startup image or the difficulty cache.
+    static void countFileAccess() {
+        fileAccesses.incrementAndGet();
+    }
+
+    // Retrieves the number of accesses to game data files, used to check that starting a game does no file I/O.
+    static int getFileAccesses() {
+        return fileAccesses.get();
+    }
+
     /**
      * Reads equations from a file and returns them as a list of strings.
      *
      * @return A list of equations read from the file.
      */
-    private List<String> getEquationsFromFile() {
+    static List<String> readEquationsFile() {
+        countFileAccess();
         List<String> equations = new ArrayList<>();
         try {
             String filePath = "equations.txt"; // Path to the file containing equations
@@ -79,6 +141,7 @@ public class NumberleModel extends Observable implements INumberleModel {
                 // Add the non-empty line (equation) to the list
                 equations.add(line);
             }
+            scanner.close();
         } catch (FileNotFoundException e) {
             // Throw a runtime exception if the file is still not found
             throw new RuntimeException(e);
@@ -90,6 +153,29 @@ public class NumberleModel extends Observable implements INumberleModel {
         CORRECT, EXIST, WRONG
     }
 
+    /**
+     * Computes the feedback codes of a guess, one State ordinal per character of the guess.
+     * Uses the same rules as getState; characters beyond the end of the target can only exist or be wrong.
+     *
+     * @param target The target string to be guessed.
+     * @param guess The guessed string.
+     * @return An array holding the State ordinal of each character in the guessed string.
+     */
+    public static byte[] getFeedbackCodes(String target, String guess) {
+        byte[] codes = new byte[guess.length()];
+        for (int i = 0; i < guess.length(); i++) {
+            char guessChar = guess.charAt(i);
+            if (i < target.length() && target.charAt(i) == guessChar) {
+                codes[i] = (byte) State.CORRECT.ordinal();
+            } else if (target.indexOf(guessChar) >= 0) {
+                codes[i] = (byte) State.EXIST.ordinal();
+            } else {
+                codes[i] = (byte) State.WRONG.ordinal();
+            }
+        }
+        return codes;
+    }
+
     /**
      * Compares the guessed string with the target string character by character and determines the state of each character.
      *
@@ -99,6 +185,17 @@ public class NumberleModel extends Observable implements INumberleModel {
      *         Each element of the array indicates whether the guessed character is correct, exists elsewhere in the target, or is wrong.
      */
     public String[] getState(String target, String guess) {
+        return compareGuess(target, guess);
+    }
+
+    /**
+     * Stateless implementation of getState, shared with the models that do not extend NumberleModel.
+     *
+     * @param target The target string to be guessed.
+     * @param guess The guessed string.
+     * @return An array of strings representing the state of each character in the guessed string compared to the target string.
+     */
+    static String[] compareGuess(String target, String guess) {
         // Initialize an array to store the state of each character in the guessed string
         String[] states = new String[target.length()];
 
@@ -111,7 +208,7 @@ public class NumberleModel extends Observable implements INumberleModel {
             if (targetChar == guessChar) {
                 // If the characters match, set the state to "CORRECT"
                 states[i] = State.CORRECT.name();
-            } else if (target.contains(String.valueOf(guessChar))) {
+            } else if (target.indexOf(guessChar) >= 0) {
                 // If the guessed character exists elsewhere in the target string, set the state to "EXIST"
                 states[i] = State.EXIST.name();
             } else {
@@ -127,7 +224,8 @@ public class NumberleModel extends Observable implements INumberleModel {
 
     /**
      * Initializes the game by selecting a target equation and resetting game parameters.
-     * If isRandom is set to true, it randomly selects a target equation from the available list.
+     * If isRandom is set to true, it randomly selects a target equation from the available list,
+     * or from the difficulty tier when one is set.
      * Otherwise, it selects the first equation from the list.
      * It also resets the current guess, remaining attempts, and sets the gameWon flag to false.
      */
@@ -137,134 +235,30 @@ public class NumberleModel extends Observable implements INumberleModel {
         Random rand = new Random();
         // Get the list of equations from the file
         List<String> equations = getEquationsFromFile();
-        // Select the target equation based on the isRandom attribute
+        String targetNumber;
+        // Select the target equation based on the isRandom and difficulty attributes
         if (isRandom) {
-            // If isRandom is true, randomly select a target equation
-            targetNumber = equations.get(rand.nextInt(equations.size()));
+            // If a difficulty is set, randomly select a target equation from the precomputed tier
+            targetNumber = difficulty != null ? DifficultyIndex.getDefault().select(difficulty, rand) : null;
+            // Otherwise, or if the tier is empty, randomly select a target equation from the whole list
+            if (targetNumber == null) {
+                targetNumber = equations.get(rand.nextInt(equations.size()));
+            }
         } else {
             // If isRandom is false, select the first equation from the list
             targetNumber = equations.get(0);
         }
-        // Initialize the current guess with spaces
-        currentGuess = new StringBuilder("       ");
-        // Reset the remaining attempts to the maximum allowed
-        remainingAttempts = MAX_ATTEMPTS;
-        //  Set the gameWon flag to false
-        gameWon = false;
+        // Publish a fresh snapshot: current guess filled with spaces, maximum attempts and gameWon set to false
+        synchronized (this) {
+            cancelPendingHint();
+            this.targetNumber = targetNumber;
+            state = GameState.start(targetNumber, "       ", MAX_ATTEMPTS);
+        }
         // Notify observers that the game state has changed
         setChanged();
         notifyObservers();
     }
 
-    /**
-     * Evaluates the given expression and returns the result.
-     * @param expression The expression to be evaluated as a String.
-     * @return The result of the expression evaluation as an integer.
-     * @throws RuntimeException if the expression is null, empty, or contains invalid characters,
-     *                         or if division by zero is attempted.
-     */
-    private static int evaluate(String expression) {
-        // Validate the expression
-        assert expression != null; // Ensure expression is not null
-        if (expression.isEmpty()) {
-            throw new RuntimeException("Expression is empty"); // Throw exception if expression is empty
-        }
-        // Ensure the first and last characters are digits
-        if (!Character.isDigit(expression.charAt(0)) || !Character.isDigit(expression.charAt(expression.length() - 1))) {
-            throw new RuntimeException("Invalid expression: Expression must start and end with digits");
-        }
-
-        // Initialize lists to store numbers and operators
-        ArrayList<String> numbers = new ArrayList<>();
-        ArrayList<String> operators = new ArrayList<>();
-
-        // Parse the expression and extract numbers and operators
-        String num = "";
-        boolean lastNotSymbol = false;
-        for (char ch : expression.toCharArray()) {
-            if (ch == '+' || ch == '-' || ch == '*' || ch == '/') {
-                // If an operator is encountered, add the preceding number to the list
-                if (!lastNotSymbol) {
-                    throw new RuntimeException("Invalid expression: Two operators without a number in between");
-                }
-                lastNotSymbol = false;
-                operators.add(ch + "");
-                if (!num.isEmpty()) {
-                    numbers.add(num);
-                    num = "";
-                }
-            } else {
-                // If a digit is encountered, append it to the current number
-                lastNotSymbol = true;
-                num += ch;
-            }
-        }
-        // Add the last number to the list
-        assert !num.isEmpty();
-        if (!num.isEmpty()) {
-            numbers.add(num);
-        }
-
-        // Process multiplication and division operations
-        //Process multiplication and division operations until none are left
-        while (operators.contains("*") || operators.contains("/")) {
-            // Iterate over each operator in the list
-            for (int i = 0; i < operators.size(); i++) {
-                String oper = operators.get(i);
-                // Check if the current operator is '*' or '/'
-                if (oper.equals("*") || oper.equals("/")) {
-                    // Retrieve the left and right values for the operation
-                    int leftValue = Integer.valueOf(numbers.get(i));
-                    int rightValue = Integer.valueOf(numbers.get(i + 1));
-                    int newValue; // Variable to store the result of the operation
-
-                    // Perform the multiplication or division operation
-                    if (oper.equals("*")) {
-                        // If the operator is '*', calculate the product
-                        newValue = leftValue * rightValue;
-                    } else {
-                        // If the operator is '/', check for division by zero and perform the division
-                        if (rightValue == 0) {
-                            // Throw an exception if division by zero is attempted
-                            throw new RuntimeException("Invalid expression: Division by zero");
-                        }
-                        if (leftValue % rightValue != 0) {
-                            // Throw an exception if division results in a remainder
-                            throw new RuntimeException("Invalid expression: Division with remainder");
-                        }
-                        newValue = leftValue / rightValue; // Calculate the quotient
-                    }
-
-                    // Update the numbers list with the result of the operation
-                    operators.remove(i); // Remove the current operator
-                    numbers.set(i, String.valueOf(newValue)); // Update the left operand with the result
-                    numbers.remove(i + 1); // Remove the right operand
-                }
-            }
-        }
-
-
-        // Process addition and subtraction operations
-        while (!operators.isEmpty()) {
-            String oper = operators.get(0);
-            int leftValue = Integer.valueOf(numbers.get(0));
-            int rightValue = Integer.valueOf(numbers.get(1));
-            int newValue;
-            if (oper.equals("+")) {
-                newValue = leftValue + rightValue;
-            } else {
-                newValue = leftValue - rightValue;
-            }
-            operators.remove(0);
-            numbers.set(0, String.valueOf(newValue));
-            numbers.remove(1);
-        }
-
-        // Return the final result
-        return Integer.valueOf(numbers.get(0));
-    }
-
-
     /**
      * This static method parses a string of equations and returns the result of the left and right expressions.
      * It involves verifying the validity of characters,
@@ -275,33 +269,7 @@ public class NumberleModel extends Observable implements INumberleModel {
      * Returns null if the expression contains invalid characters or if evaluation fails.
      */
     public static int[] GetTheExpressions(String expression) {
-        //  First is to validate characters
-        for (char ch : expression.toCharArray()) {
-            // Check if the character is a digit or a valid operator
-            if (!(Character.isDigit(ch) || ch == '+' || ch == '-' || ch == '*' || ch == '/' || ch == '=')) {
-                return null; // Invalid character found
-            }
-        }
-
-        // Splitting expression into two parts
-        int equalIndex = expression.indexOf('=');
-        // Check if '=' exists and if it is the only occurrence
-        if (equalIndex == -1 || equalIndex != expression.lastIndexOf('=')) {
-            return null;
-        }
-        //Extract left and right parts of the expression
-        String leftPart = expression.substring(0, equalIndex);
-        String rightPart = expression.substring(equalIndex + 1);
-        try {
-            //Evaluate the left and right parts of the expression
-            int leftValue = evaluate(leftPart);
-            int rightValue = evaluate(rightPart);
-
-            //Return the evaluated values as an array
-            return new int[]{leftValue,rightValue};
-        } catch (Exception e) {
-            return null; // When the valuation get failed, return null
-        }
+        return EquationEvaluator.evaluateSides(expression);
     }
 
     /**
@@ -313,27 +281,45 @@ public class NumberleModel extends Observable implements INumberleModel {
     @Override
     public boolean processInput(String input) {
         boolean result = false; // Initialize the result flag to false
-        // Extract and evaluate the left and right sides of the input expression
-        int[] expressions = GetTheExpressions(input);
-        //  Check if the expressions are valid and equal
-        if (expressions != null && expressions[0] == expressions[1]) {
-            // If the expressions are valid and equal, decrement the remaining attempts and set the result flag to true
-            remainingAttempts--;
-            result = true;
-        }
-        // Check if remaining attempts have reached zero
-        if (remainingAttempts <= 0) {
-            // If remaining attempts have reached zero, set the gameWon flag to false
-            gameWon = false;
+        boolean changed = false; // Whether a new snapshot has been published
+        // Check that both sides of the input expression are valid and equal, without allocating
+        boolean balanced = EquationEvaluator.check(input) == EquationEvaluator.Outcome.VALID;
+        // Updates are serialised so that each one starts from the latest snapshot
+        synchronized (this) {
+            cancelPendingHint();
+            GameState current = state;
+            int remainingAttempts = current.getRemainingAttempts();
+            boolean gameWon = current.isGameWon();
+            //  Check if the expressions are valid and equal
+            if (balanced) {
+                // If the expressions are valid and equal, decrement the remaining attempts and set the result flag to true
+                remainingAttempts--;
+                result = true;
+            }
+            // Check if remaining attempts have reached zero
+            if (remainingAttempts <= 0) {
+                // If remaining attempts have reached zero, set the gameWon flag to false
+                gameWon = false;
+            }
+            // Check if the input exactly matches the target number
+            if (targetNumber.equals(input)) {
+                // If the input exactly matches the target number, set the gameWon flag to true
+                gameWon = true;
+            }
+            // Publish the new snapshot, a valid guess adds a row with its feedback
+            if (result) {
+                state = current.withGuess(input, getFeedbackCodes(targetNumber, input), remainingAttempts, gameWon);
+                changed = true;
+            } else if (gameWon != current.isGameWon()) {
+                state = current.withOutcome(remainingAttempts, gameWon);
+                changed = true;
+            }
         }
-        // Check if the input exactly matches the target number
-        if (targetNumber.equals(input)) {
-            // If the input exactly matches the target number, set the gameWon flag to true
-            gameWon = true;
+        // Notify observers only if the game state has changed, a rejected input leaves it as it was
+        if (changed) {
+            setChanged();
+            notifyObservers();
         }
-        // Notify observers that the game state has changed
-        setChanged();
-        notifyObservers();
         // Return the result flag
         return result;
     }
@@ -342,13 +328,13 @@ public class NumberleModel extends Observable implements INumberleModel {
     // Checks if the game is over by evaluating if the number of remaining attempts has reached zero or if the game has been won.
     @Override
     public boolean isGameOver() {
-        return remainingAttempts <= 0 || gameWon;
+        return state.isGameOver();
     }
 
     // Checks if the game has been won.
     @Override
     public boolean isGameWon() {
-        return gameWon;
+        return state.isGameWon();
     }
 
     // Retrieves the current target number that the player is attempting to guess.
@@ -357,18 +343,44 @@ public class NumberleModel extends Observable implements INumberleModel {
         return targetNumber;
     }
 
-    // Retrieves the current guess StringBuilder.
-    // This method may be used to retrieve or modify the current guess in progress.
-    // Modification should be done with caution as it directly affects the game state.
+    // Retrieves a copy of the current guess in progress.
+    // Modifying the returned StringBuilder does not affect the game state.
     @Override
     public StringBuilder getCurrentGuess() {
-        return currentGuess;
+        return new StringBuilder(state.getCurrentGuess());
     }
 
     // Retrieves the number of remaining attempts the player has to guess the target number.
     @Override
     public int getRemainingAttempts() {
-        return remainingAttempts;
+        return state.getRemainingAttempts();
+    }
+
+    // Retrieves the current immutable snapshot of the game, safe to read from any thread.
+    @Override
+    public GameState getGameState() {
+        return state;
+    }
+
+    /**
+     * Starts an anytime search for the next guess on the current snapshot. The search runs on a bounded
+     * background pool and is cancelled when the next input is processed or a new game starts.
+     * @param budget The time the search may take.
+     * @return A future completed with the suggested guess, or null if no equation fits the feedback so far.
+     */
+    @Override
+    public synchronized CompletableFuture<String> suggestNextGuess(Duration budget) {
+        cancelPendingHint();
+        pendingHint = HintSearch.suggest(state, budget);
+        return pendingHint;
+    }
+
+    // Cancels the last hint search if it is still running, its answer would be out of date.
+    private void cancelPendingHint() {
+        if (pendingHint != null) {
+            pendingHint.cancel(true);
+            pendingHint = null;
+        }
     }
 
     // Starts a new game by initializing the game state.
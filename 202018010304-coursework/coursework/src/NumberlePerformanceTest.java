@@ -0,0 +1,176 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Performance budgets for the hot paths of the game, checked next to the functional tests in NumberleTest.
+ * Allocation is measured with the allocated bytes counter of the current thread after a warm-up, throughput is
+ * measured over the equations file. Every failure message states the measured and the expected numbers.
+ */
+public class NumberlePerformanceTest {
+    // Calls made before measuring, so that the code is compiled
+    private static final int WARM_UP_CALLS = 50_000;
+    // Calls measured for allocation
+    private static final int MEASURED_CALLS = 100_000;
+    // Time each throughput measurement runs for, in nanoseconds
+    private static final long THROUGHPUT_NANOS = 300_000_000L;
+
+    // Bytes a processInput call accepting a guess may allocate for its copy-on-write snapshot
+    private static final double SNAPSHOT_BYTES_BUDGET = 256;
+    // Minimum operations per second of each path
+    private static final double MIN_EVALUATIONS_PER_SECOND = 1_000_000;
+    private static final double MIN_FEEDBACK_CODES_PER_SECOND = 1_000_000;
+    private static final double MIN_PACKED_FEEDBACK_PER_SECOND = 5_000_000;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private NumberleModel model;
+    private List<String> equations;
+    private Object sink; // Keeps results alive so that they cannot be optimised away
+
+    @BeforeEach
+    void setUp() {
+        model = new NumberleModel(true, false, false);
+        model.startNewGame();
+        // Copy the equations, a list backed by the startup image would unpack them on every access
+        equations = new ArrayList<>(NumberleModel.getEquationsFromFile());
+        assertTrue(THREAD_MX_BEAN.isThreadAllocatedMemorySupported(), "The JVM needs to measure allocated bytes");
+        THREAD_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    // Measures the bytes allocated per call after a warm-up, not counting the cost of the measurement itself.
+    private static double allocatedBytesPerCall(Runnable call) {
+        for (int i = 0; i < WARM_UP_CALLS; i++) {
+            call.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long overheadStart = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        long overhead = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - overheadStart;
+        long start = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            call.run();
+        }
+        long allocated = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - start - overhead;
+        return Math.max(0, allocated) / (double) MEASURED_CALLS;
+    }
+
+    // Measures operations per second, where one call of the body performs the given number of operations.
+    private static double operationsPerSecond(Runnable body, int operationsPerCall) {
+        for (int i = 0; i < WARM_UP_CALLS / operationsPerCall + 1; i++) {
+            body.run();
+        }
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            body.run();
+            operations += operationsPerCall;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < THROUGHPUT_NANOS);
+        return operations * 1e9 / elapsed;
+    }
+
+    @Test
+    void testGetStateAllocatesOnlyItsResult() {
+        String target = model.getTargetNumber();
+        String guess = "4*1=3+1";
+        // The returned array is the only allocation allowed, its size is measured the same way, stray bytes of the
+        // runtime during the measurement average out below one byte per call
+        double arrayBytes = allocatedBytesPerCall(() -> sink = new String[target.length()]);
+        double stateBytes = allocatedBytesPerCall(() -> sink = model.getState(target, guess));
+        assertTrue(stateBytes < arrayBytes + 1,
+                String.format("getState allocated %.1f bytes per call, expected at most %.1f (its result array)", stateBytes, arrayBytes));
+        System.out.printf("getState allocation test passed successfully: %.1f bytes per call, budget %.1f%n", stateBytes, arrayBytes);
+    }
+
+    @Test
+    void testRejectedInputIsAllocationFree() {
+        double bytes = allocatedBytesPerCall(() -> {
+            model.processInput("1+1=1");
+            model.processInput("4*1=3+x");
+            model.processInput("8/3=2+1");
+        });
+        assertTrue(bytes < 1,
+                String.format("processInput allocated %.1f bytes per rejected input, expected 0", bytes / 3));
+        System.out.printf("processInput allocation test passed successfully: %.1f bytes per rejected input, budget 0%n", bytes / 3);
+    }
+
+    @Test
+    void testAcceptedInputAllocatesOnlyItsSnapshot() {
+        int[] calls = {0};
+        double bytes = allocatedBytesPerCall(() -> {
+            // Replay the same game so that every snapshot has at most MAX_ATTEMPTS rows
+            if (calls[0]++ % INumberleModel.MAX_ATTEMPTS == 0) {
+                model.startNewGame();
+            }
+            model.processInput("4*1=3+1");
+        });
+        // Starting a game is not part of the budget, measure it on its own and take it out
+        double startBytes = allocatedBytesPerCall(model::startNewGame) / INumberleModel.MAX_ATTEMPTS;
+        double snapshotBytes = bytes - startBytes;
+        assertTrue(snapshotBytes <= SNAPSHOT_BYTES_BUDGET,
+                String.format("processInput allocated %.1f bytes per accepted guess, expected at most %.1f", snapshotBytes, SNAPSHOT_BYTES_BUDGET));
+        System.out.printf("processInput snapshot test passed successfully: %.1f bytes per accepted guess, budget %.1f%n", snapshotBytes, SNAPSHOT_BYTES_BUDGET);
+    }
+
+    @Test
+    void testStartNewGameDoesNoFileIO() {
+        // Cover both ways of drawing a target: from the whole list and from a difficulty tier
+        NumberleModel tieredModel = new NumberleModel(true, false, true);
+        tieredModel.setDifficulty(DifficultyIndex.Difficulty.HARD);
+        tieredModel.startNewGame();
+        int accesses = NumberleModel.getFileAccesses();
+        for (int i = 0; i < 1_000; i++) {
+            model.startNewGame();
+            tieredModel.startNewGame();
+        }
+        assertEquals(accesses, NumberleModel.getFileAccesses(),
+                String.format("startNewGame accessed game data files %d times after warm-up, expected 0",
+                        NumberleModel.getFileAccesses() - accesses));
+        System.out.println("startNewGame file I/O test passed successfully: 0 file accesses after warm-up");
+    }
+
+    @Test
+    void testEvaluatorThroughput() {
+        double rate = operationsPerSecond(() -> {
+            for (String equation : equations) {
+                sink = EquationEvaluator.check(equation);
+            }
+        }, equations.size());
+        assertTrue(rate >= MIN_EVALUATIONS_PER_SECOND,
+                String.format("Evaluator checked %.0f equations per second, expected at least %.0f", rate, MIN_EVALUATIONS_PER_SECOND));
+        System.out.printf("Evaluator throughput test passed successfully: %.0f equations per second, minimum %.0f%n", rate, MIN_EVALUATIONS_PER_SECOND);
+    }
+
+    @Test
+    void testFeedbackThroughput() {
+        String target = model.getTargetNumber();
+        double rate = operationsPerSecond(() -> {
+            for (String equation : equations) {
+                sink = NumberleModel.getFeedbackCodes(target, equation);
+            }
+        }, equations.size());
+        assertTrue(rate >= MIN_FEEDBACK_CODES_PER_SECOND,
+                String.format("Feedback codes computed %.0f times per second, expected at least %.0f", rate, MIN_FEEDBACK_CODES_PER_SECOND));
+
+        int packedTarget = EquationCodec.pack(target);
+        int[] packed = equations.stream().mapToInt(EquationCodec::pack).toArray();
+        int[] total = {0};
+        double packedRate = operationsPerSecond(() -> {
+            for (int equation : packed) {
+                total[0] += EquationCodec.feedback(packedTarget, equation);
+            }
+        }, packed.length);
+        sink = total[0];
+        assertTrue(packedRate >= MIN_PACKED_FEEDBACK_PER_SECOND,
+                String.format("Packed feedback computed %.0f times per second, expected at least %.0f", packedRate, MIN_PACKED_FEEDBACK_PER_SECOND));
+        System.out.printf("Feedback throughput test passed successfully: %.0f codes and %.0f packed per second, minimum %.0f and %.0f%n",
+                rate, packedRate, MIN_FEEDBACK_CODES_PER_SECOND, MIN_PACKED_FEEDBACK_PER_SECOND);
+    }
+}
@@ -3,6 +3,16 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
 public class NumberleTest {
     private NumberleModel model;
     private NumberleController controller;
@@ -67,5 +77,181 @@ public class NumberleTest {
         System.out.println("State after win test passed successfully."); // Print success message
     }
 
+    @Test
+    void testGameStateSnapshot() {
+        // A snapshot taken before a guess must not change when the game moves on
+        GameState before = model.getGameState();
+        assertTrue(controller.processInput("4*1=3+1"), "Valid expression can be processed");
+        GameState after = model.getGameState();
+        assertEquals(0, before.getGuessCount(), "Earlier snapshot must stay unchanged");
+        assertEquals(INumberleModel.MAX_ATTEMPTS, before.getRemainingAttempts(), "Earlier snapshot must stay unchanged");
+        assertEquals(1, after.getGuessCount(), "New snapshot holds the accepted guess");
+        assertEquals("4*1=3+1", after.getGuess(0), "New snapshot holds the accepted guess");
+        assertEquals(INumberleModel.MAX_ATTEMPTS - 1, after.getRemainingAttempts(), "New snapshot holds the decremented attempts");
+        assertEquals(model.getTargetNumber().hashCode(), after.getTargetHash(), "Snapshots identify the target by its hash");
+        System.out.println("Game state snapshot test passed successfully.");
+    }
+
+    @Test
+    void testCompactSession() {
+        // A session kept in the compact store plays by the same rules as the model
+        CompactSessionStore store = new CompactSessionStore();
+        int sessionId = store.createSession(true, false, false);
+        INumberleModel session = store.open(sessionId);
+        assertEquals(model.getTargetNumber(), session.getTargetNumber(), "Non random sessions start with the first equation");
+        assertFalse(session.processInput("1+1=1"), "Reject the invalid input");
+        assertTrue(session.processInput("4*1=3+1"), "Valid expression can be processed");
+        assertTrue(session.processInput(session.getTargetNumber()), "The target can be processed");
+        // A fresh view over the same record sees what the previous one wrote
+        GameState state = store.open(sessionId).getGameState();
+        assertTrue(state.isGameWon(), "Game needs to be won if the target number is guessed by the user.");
+        assertEquals(2, state.getGuessCount(), "Both valid guesses are stored");
+        assertEquals(INumberleModel.MAX_ATTEMPTS - 2, state.getRemainingAttempts(), "Each valid guess uses one attempt");
+        store.release(sessionId);
+        assertEquals(0, store.getSessionCount(), "Released sessions are not counted");
+        System.out.println("Compact session test passed successfully.");
+    }
+
+    @Test
+    void testCompactSessionAfterRelease() {
+        // A view held past the release of its session must fail instead of writing to the record
+        CompactSessionStore store = new CompactSessionStore();
+        int sessionId = store.createSession(true, false, true);
+        INumberleModel stale = store.open(sessionId);
+        store.release(sessionId);
+        assertThrows(IllegalStateException.class, stale::startNewGame, "A released session cannot start a game");
+        assertThrows(IllegalArgumentException.class, () -> store.open(sessionId), "A released session cannot be opened");
+        int reused = store.createSession(true, false, true);
+        int fresh = store.createSession(true, false, true);
+        assertEquals(sessionId, reused, "The released record is reused");
+        assertNotEquals(reused, fresh, "Each live session has its own record");
+        assertThrows(IllegalStateException.class, () -> stale.processInput("4*1=3+1"),
+                "A view of a released session must not write to the reused record");
+        INumberleModel session = store.open(reused);
+        assertEquals(0, session.getGameState().getGuessCount(), "The reused session is untouched by the stale view");
+        assertTrue(session.processInput("4*1=3+1"), "The reused session can be played");
+        assertEquals(2, store.getSessionCount(), "Both new sessions are live");
+        System.out.println("Compact session after release test passed successfully.");
+    }
+
+    @Test
+    void testDifficultyTiers() {
+        // Every equation of the file falls in exactly one tier, and tiered targets come from that tier
+        DifficultyIndex index = DifficultyIndex.getDefault();
+        int total = 0;
+        for (DifficultyIndex.Difficulty difficulty : DifficultyIndex.Difficulty.values()) {
+            assertTrue(index.getTierSize(difficulty) > 0, "Each tier needs equations");
+            total += index.getTierSize(difficulty);
+        }
+        assertEquals(NumberleModel.getEquationsFromFile().size(), total, "Tiers need to cover the equations");
+        NumberleModel hardModel = new NumberleModel(true, false, true);
+        hardModel.setDifficulty(DifficultyIndex.Difficulty.HARD);
+        hardModel.startNewGame();
+        assertTrue(hardModel.processInput(hardModel.getTargetNumber()), "Tiered targets must be valid equations");
+        System.out.println("Difficulty tiers test passed successfully.");
+    }
+
+    @Test
+    void testSuggestNextGuess() throws Exception {
+        // The hint is a valid equation, and a pending hint is cancelled once the player submits a guess
+        controller.processInput("4*1=3+1");
+        String hint = controller.suggestNextGuess(Duration.ofMillis(200)).get(5, TimeUnit.SECONDS);
+        assertNotNull(hint, "A hint needs to be found while the target is unknown");
+        assertTrue(controller.processInput(hint), "The hint needs to be a valid expression");
+        // Hold the search so that it cannot finish on its own before the guess is submitted
+        CountDownLatch gate = new CountDownLatch(1);
+        HintSearch.setStartGate(gate);
+        CompletableFuture<String> pending;
+        try {
+            pending = controller.suggestNextGuess(Duration.ofSeconds(5));
+            controller.processInput("4*1=3+1");
+        } finally {
+            HintSearch.setStartGate(null);
+            gate.countDown();
+        }
+        assertTrue(pending.isCancelled(), "Submitting a guess needs to cancel the pending hint");
+        System.out.println("Suggest next guess test passed successfully.");
+    }
+
+    @Test
+    void testReplayAnalyser() {
+        // Replaying a logged game grades each guess and ends with the target as the only candidate
+        String target = model.getTargetNumber();
+        ReplayAnalyser analyser = new ReplayAnalyser(NumberleModel.getEquationsFromFile());
+        ReplayAnalyser.Report report = analyser.analyse(Stream.of("# game log", target + ",4*1=3+1," + target, "xxx,1+1=2",
+                target + ",1111111," + target));
+        assertEquals(1, report.getGames(), "Only the well formed game is analysed");
+        assertEquals(2, report.getMalformedGames(), "Games with an unknown target or an invalid guess are reported as malformed");
+        assertEquals(1, report.getWonGames(), "The game ending with the target is won");
+        assertEquals(2, report.getGuesses(), "Each guess of the game is graded");
+        assertEquals(1.0, report.getAverageCandidatesLeft(1), "Guessing the target leaves only the target");
+        System.out.println("Replay analyser test passed successfully.");
+    }
+
+    @Test
+    void testCandidateIndexSkipsUnpackableLines() {
+        // A corpus line too long to be packed is never a candidate, even before the first guess
+        CandidateIndex index = CandidateIndex.build(Arrays.asList("1+2=3+0", "10+20=30", "4*1=3+1"));
+        GameState fresh = GameState.start("4*1=3+1", "       ", INumberleModel.MAX_ATTEMPTS);
+        assertArrayEquals(new long[]{0b101}, index.filter(fresh), "Only the packable lines are candidates");
+        GameState guessed = fresh.withGuess("4*1=3+1", NumberleModel.getFeedbackCodes("4*1=3+1", "4*1=3+1"),
+                INumberleModel.MAX_ATTEMPTS - 1, true);
+        assertArrayEquals(new long[]{0b100}, index.filter(guessed), "The feedback keeps only the matching line");
+        System.out.println("Candidate index unpackable line test passed successfully.");
+    }
+
+    @Test
+    void testStartupImage() throws Exception {
+        // An image written from the equations maps back to the same corpus and indexes
+        List<String> equations = NumberleModel.readEquationsFile();
+        byte[] source = Files.readAllBytes(NumberleModel.getEquationsFile().toPath());
+        File imageFile = File.createTempFile("numberle", ".img");
+        imageFile.deleteOnExit();
+        StartupImage.write(equations, source, imageFile);
+        StartupImage image = StartupImage.map(imageFile, source);
+        assertNotNull(image, "The image of the current equations needs to be up to date");
+        assertEquals(equations, image.getEquations(), "The image needs to hold the equations in file order");
+        assertTrue(image.isValidGuess("4*1=3+1"), "Valid expressions need to be in the valid guess set");
+        assertFalse(image.isValidGuess("1+1+1=4"), "Unbalanced expressions must not be in the valid guess set");
+        assertArrayEquals(StartupImage.enumerateValidGuesses(), image.getValidGuesses(), "The image needs to hold every valid guess");
+        assertEquals(equations.size(), image.getCandidateIndex().size(), "The candidate index needs to cover the equations");
+        assertEquals(DifficultyIndex.build(equations).getTierSize(DifficultyIndex.Difficulty.HARD),
+                image.getDifficultyIndex().getTierSize(DifficultyIndex.Difficulty.HARD), "The image needs to hold the tiers");
+        assertNull(StartupImage.map(imageFile, "1+1=2".getBytes()), "An image of other equations must be ignored");
+        System.out.println("Startup image test passed successfully.");
+    }
+
+    @Test
+    void testCorpusIngest() throws Exception {
+        // Lines are normalised, checked and deduplicated, every rejected line is reported with its reason
+        File input = File.createTempFile("numberle", ".in");
+        File corpus = File.createTempFile("numberle", ".txt");
+        File report = File.createTempFile("numberle", ".rejected");
+        input.deleteOnExit();
+        corpus.deleteOnExit();
+        report.deleteOnExit();
+        Files.write(input.toPath(), String.join("\r\n", "4*1=3+1", " 4 \u00D7 1 = 3 + 1", "", "2+3=5+x",
+                "1+1+1=4", "8/3=2+1", "1+1=2", "9/0=0+1", "50000*50000=1", "2+2=3+1", "1 2+3=15").getBytes("UTF-8"));
+        CorpusIngest ingest = new CorpusIngest(2);
+        ingest.run(input, corpus, report);
+        assertEquals(Arrays.asList("4*1=3+1", "2+2=3+1"), Files.readAllLines(corpus.toPath()),
+                "The corpus needs to hold the valid equations once, in input order");
+        assertEquals(1, ingest.getRejected(CorpusIngest.Reason.DUPLICATE), "The normalised duplicate must be rejected");
+        assertEquals(1, ingest.getRejected(CorpusIngest.Reason.BAD_CHARACTER), "Unknown characters must be rejected");
+        assertEquals(1, ingest.getRejected(CorpusIngest.Reason.MALFORMED), "Whitespace must not join two numbers into one");
+        assertEquals(1, ingest.getRejected(CorpusIngest.Reason.UNBALANCED), "Unbalanced equations must be rejected");
+        assertEquals(1, ingest.getRejected(CorpusIngest.Reason.DIVISION_REMAINDER), "Divisions with a remainder must be rejected");
+        assertEquals(1, ingest.getRejected(CorpusIngest.Reason.DIVISION_BY_ZERO), "Divisions by zero must be rejected");
+        assertEquals(1, ingest.getRejected(CorpusIngest.Reason.WRONG_LENGTH), "Equations of the wrong length must be rejected");
+        assertEquals(1, ingest.getRejected(CorpusIngest.Reason.OVERFLOW), "Overflowing equations must be rejected");
+        assertTrue(Files.readAllLines(report.toPath()).contains("5\tUNBALANCED\t1+1+1=4"),
+                "The report needs the line number, reason and text of every rejected line");
+        // Cleaning a corpus in place keeps its equations
+        new CorpusIngest(2).run(corpus, corpus, report);
+        assertEquals(Arrays.asList("4*1=3+1", "2+2=3+1"), Files.readAllLines(corpus.toPath()),
+                "Ingesting a corpus into itself must keep its equations");
+        System.out.println("Corpus ingest test passed successfully.");
+    }
+
 }
 
@@ -1,6 +1,7 @@
 // NumberleView.java
 import javax.swing.*;
 import java.awt.*;
+import java.time.Duration;
 import java.util.Observer;
 /**
  This class implements a graphical user interface application
@@ -19,6 +20,7 @@ public class NumberleView implements Observer {
 
     private final Color orange = new Color(255, 175, 0);
     private final Color gray = new Color(180, 180, 180);
+    private final Duration hintBudget = Duration.ofMillis(500); // Time the hint search may take
 
     public NumberleView(INumberleModel model, NumberleController controller) {
         this.controller = controller;
@@ -63,12 +65,13 @@ public class NumberleView implements Observer {
 
         // Creates an input panel for user input
         JPanel inputPanel = new JPanel();
-        inputPanel.setLayout(new GridLayout(4, 1));
+        inputPanel.setLayout(new GridLayout(5, 1));
 
         inputPanel.add(inputTextField); // Adds a text field for user input
 
         JButton newGameButton = new JButton("New Game"); // Button to start a new game
         JButton submitButton = new JButton("Submit"); // Button to submit a guess
+        JButton hintButton = new JButton("Hint"); // Button to ask for a suggested guess
 
         // Adds an action listener to the submit button
         submitButton.addActionListener(new java.awt.event.ActionListener() {
@@ -78,6 +81,9 @@ public class NumberleView implements Observer {
                 // Processes the input and validates it
                 boolean isValid = controller.processInput(input);
                 if (isValid) {
+                    // Reads one consistent snapshot of the game, the new guess is its last row
+                    GameState snapshot = controller.getGameState();
+                    int row = snapshot.getGuessCount() - 1;
                     // Updates the game board based on the input
                     for (int i = 0; i < input.length(); i++) {
                         JButton button = (JButton) boardPanel.getComponent(currentRow[0] * 7 + i);
@@ -85,18 +91,18 @@ public class NumberleView implements Observer {
                         button.setFont(new Font(button.getFont().getName(), Font.BOLD, 18)); // set the font size
                         button.setForeground(Color.BLACK); // set the font color to black
                         // get the state and set the color according to the state
-                        String state = model.getState(model.getTargetNumber(), input)[i];
+                        NumberleModel.State state = NumberleModel.State.values()[snapshot.getFeedbackCode(row, i)];
                         switch (state) {
                             // If the guess in the current position is correct, set the color to green
-                            case "CORRECT":
+                            case CORRECT:
                                 button.setBackground(green);
                                 break;
                             // If the guess are exist but not in correct position, set the color to orange
-                            case "EXIST":
+                            case EXIST:
                                 button.setBackground(orange);
                                 break;
                             //If the guess in the current position is wrong, set the color to gray
-                            case "WRONG":
+                            case WRONG:
                                 button.setBackground(gray);
                                 break;
                         }
@@ -104,13 +110,13 @@ public class NumberleView implements Observer {
                     currentRow[0]++;
 
                     // Checks if the game is won or lost
-                    if (model.isGameWon()) {
+                    if (snapshot.isGameWon()) {
                         JOptionPane.showMessageDialog(frame, "You win!");
                         controller.startNewGame();
                         if (model.isShowTarget()) {
                             JOptionPane.showMessageDialog(frame, "Target number:" + model.getTargetNumber());
                         }
-                    } else if (model.isGameOver()) {
+                    } else if (snapshot.isGameOver()) {
                         JOptionPane.showMessageDialog(frame, "You lose!");
                         controller.startNewGame();
                         if (model.isShowTarget()) {
@@ -150,6 +156,21 @@ public class NumberleView implements Observer {
         });
         newGameButton.setEnabled(false); // Disables the new game button initially
         inputPanel.add(newGameButton); // Adds the new game button to the input panel
+        hintButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                // The search runs in the background, the button stays disabled until it completes
+                hintButton.setEnabled(false);
+                controller.suggestNextGuess(hintBudget).whenComplete((guess, error) ->
+                        SwingUtilities.invokeLater(() -> {
+                            hintButton.setEnabled(true);
+                            // A cancelled or failed search leaves the input untouched
+                            if (error == null && guess != null) {
+                                inputTextField.setText(guess);
+                            }
+                        }));
+            }
+        });
+        inputPanel.add(hintButton); // Adds the hint button to the input panel
         attemptsLabel.setText("Attempts remaining: " + controller.getRemainingAttempts());
         inputPanel.add(attemptsLabel); // Adds attempts label to the input panel
         center.add(inputPanel); // Adds the input panel to the center panel
@@ -0,0 +1,294 @@
+// ReplayAnalyser.java
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Offline analyser that grades every guess of logged games.
+ * A game log holds one game per line: the target followed by the guesses in order, separated by commas.
+ * Empty lines and lines starting with '#' are skipped, and a game with a guess the game would have rejected is
+ * counted as malformed.
+ * Each game is replayed with the same feedback rules as NumberleModel.getState, and each guess is graded by:
+ * - the information it gained, log2 of the candidates before the guess over the candidates after it,
+ * - the information it was expected to gain, compared with the best guess available at that point,
+ * - the number of candidates it left.
+ * The best guess is looked for among every valid guess of EquationCodec.MAX_SYMBOLS symbols, taken from the startup
+ * image when there is one, so the efficiency of a turn is at most 1 unless players guessed shorter equations.
+ * Lines are streamed and analysed in parallel, and only the aggregated report is kept in memory. The best
+ * expected information only depends on the remaining candidates, so it is cached per candidate set, which
+ * together with a table of first guesses makes the common early turns cheap.
+ */
+public class ReplayAnalyser {
+    // Turns beyond this one are aggregated in the last row of the report
+    private static final int MAX_TURNS = INumberleModel.MAX_ATTEMPTS;
+    // Upper bound on the cached candidate sets, to keep memory bounded on very varied logs
+    private static final int MAX_CACHED_SETS = 1 << 20;
+
+    private final int[] corpus; // Packed equations the players may be guessing, sorted
+    private final int[] probes; // Packed valid guesses the best guess is looked for among, sorted
+    private final Map<CandidateSet, Double> bestInformation = new ConcurrentHashMap<>();
+    private final ThreadLocal<int[]> classSizes = ThreadLocal.withInitial(() -> new int[1 << 14]);
+    private final ThreadLocal<int[]> feedbacks; // Scratch feedback of each candidate
+    private final double[] openingInformation; // Expected information of each probe as the first guess
+
+    /**
+     * Creates an analyser for games whose targets come from the given equations.
+     * @param equations The corpus of targets, equations that cannot be packed are ignored.
+     */
+    public ReplayAnalyser(List<String> equations) {
+        corpus = equations.stream()
+                .mapToInt(EquationCodec::pack)
+                .filter(code -> code != EquationCodec.NOT_PACKABLE)
+                .distinct()
+                .sorted()
+                .toArray();
+        StartupImage image = StartupImage.getDefault();
+        probes = image != null ? image.getValidGuesses() : StartupImage.enumerateValidGuesses();
+        feedbacks = ThreadLocal.withInitial(() -> new int[corpus.length]);
+        // Every game starts from the whole corpus, so the first guesses are graded from a precomputed table
+        openingInformation = Arrays.stream(probes).parallel()
+                .mapToDouble(probe -> expectedInformation(probe, corpus, corpus.length))
+                .toArray();
+    }
+
+    /**
+     * Analyses a game log and writes the report.
+     * Usage: java ReplayAnalyser game-log [report-file]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java ReplayAnalyser game-log [report-file]");
+            return;
+        }
+        ReplayAnalyser analyser = new ReplayAnalyser(NumberleModel.getEquationsFromFile());
+        long start = System.nanoTime();
+        Report report;
+        try (Stream<String> lines = Files.lines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            report = analyser.analyse(lines.parallel());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (args.length > 1) {
+            Path reportFile = Paths.get(args[1]);
+            try (PrintStream out = new PrintStream(Files.newOutputStream(reportFile), false, "UTF-8")) {
+                report.print(out, seconds);
+            }
+        } else {
+            report.print(System.out, seconds);
+        }
+    }
+
+    /**
+     * Analyses the games of a log. A parallel stream is analysed in parallel.
+     * @param lines The lines of the log.
+     * @return The aggregated report.
+     */
+    public Report analyse(Stream<String> lines) {
+        return lines.collect(Report::new, this::analyseLine, Report::combine);
+    }
+
+    private void analyseLine(Report report, String line) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        }
+        String[] fields = line.split(",");
+        int target = EquationCodec.pack(fields[0].trim());
+        if (fields.length < 2 || Arrays.binarySearch(corpus, target) < 0) {
+            report.malformedGames++;
+            return;
+        }
+        int[] guesses = new int[fields.length - 1];
+        for (int i = 0; i < guesses.length; i++) {
+            String guess = fields[i + 1].trim();
+            guesses[i] = EquationCodec.pack(guess);
+            // Only guesses the game accepts are replayed, anything else would skew the grades
+            if (guesses[i] == EquationCodec.NOT_PACKABLE
+                    || EquationEvaluator.check(guess) != EquationEvaluator.Outcome.VALID) {
+                report.malformedGames++;
+                return;
+            }
+        }
+        report.games++;
+        int[] candidates = corpus;
+        int count = corpus.length;
+        for (int turn = 0; turn < guesses.length; turn++) {
+            int guess = guesses[turn];
+            double best = bestInformation(candidates, count);
+            int opening = turn == 0 ? Arrays.binarySearch(probes, guess) : -1;
+            double expected = opening >= 0 ? openingInformation[opening] : expectedInformation(guess, candidates, count);
+            int feedback = EquationCodec.feedback(target, guess);
+            int[] remaining = new int[count];
+            int left = 0;
+            for (int i = 0; i < count; i++) {
+                if (EquationCodec.feedback(candidates[i], guess) == feedback) {
+                    remaining[left++] = candidates[i];
+                }
+            }
+            report.addGuess(Math.min(turn, MAX_TURNS - 1), log2((double) count / left), expected, best, left);
+            candidates = remaining;
+            count = left;
+            if (guess == target) {
+                report.wonGames++;
+                break;
+            }
+        }
+    }
+
+    // Entropy of the feedback a probe gives over the candidates, i.e. the information it is expected to gain.
+    private double expectedInformation(int probe, int[] candidates, int count) {
+        int[] sizes = classSizes.get();
+        int[] feedback = feedbacks.get();
+        for (int i = 0; i < count; i++) {
+            feedback[i] = EquationCodec.feedback(candidates[i], probe);
+            sizes[feedback[i]]++;
+        }
+        double entropy = 0;
+        for (int i = 0; i < count; i++) {
+            int size = sizes[feedback[i]];
+            if (size > 0) {
+                double share = (double) size / count;
+                entropy -= share * log2(share);
+                sizes[feedback[i]] = 0;
+            }
+        }
+        return entropy;
+    }
+
+    // Highest expected information over every probe, cached per candidate set.
+    private double bestInformation(int[] candidates, int count) {
+        if (count <= 1) {
+            return 0; // Nothing is left to learn
+        }
+        CandidateSet key = new CandidateSet(candidates, count);
+        Double cached = bestInformation.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        // No probe can gain more than log2(count) bits, so the search stops once one tells every candidate apart
+        double bound = log2(count) - 1e-9;
+        double best = 0;
+        for (int i = 0; i < probes.length && best < bound; i++) {
+            best = Math.max(best, expectedInformation(probes[i], candidates, count));
+        }
+        if (bestInformation.size() < MAX_CACHED_SETS) {
+            bestInformation.put(key, best);
+        }
+        return best;
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+
+    // Key of the cache: the packed candidates, which are always kept in corpus order.
+    private static final class CandidateSet {
+        private final int[] candidates;
+        private final int hash;
+
+        CandidateSet(int[] candidates, int count) {
+            this.candidates = Arrays.copyOf(candidates, count);
+            this.hash = Arrays.hashCode(this.candidates);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof CandidateSet && Arrays.equals(candidates, ((CandidateSet) other).candidates);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Aggregated grades of the analysed games, per turn. Reports of parts of a log are combined into one.
+     */
+    public static class Report {
+        private long games; // Games analysed
+        private long wonGames; // Games whose last guess is the target
+        private long malformedGames; // Lines that could not be replayed
+        private final long[] guesses = new long[MAX_TURNS]; // Guesses per turn
+        private final double[] informationGained = new double[MAX_TURNS];
+        private final double[] expectedInformation = new double[MAX_TURNS];
+        private final double[] bestInformation = new double[MAX_TURNS];
+        private final double[] candidatesLeft = new double[MAX_TURNS];
+
+        private void addGuess(int turn, double gained, double expected, double best, int left) {
+            guesses[turn]++;
+            informationGained[turn] += gained;
+            expectedInformation[turn] += expected;
+            bestInformation[turn] += best;
+            candidatesLeft[turn] += left;
+        }
+
+        private void combine(Report other) {
+            games += other.games;
+            wonGames += other.wonGames;
+            malformedGames += other.malformedGames;
+            for (int turn = 0; turn < MAX_TURNS; turn++) {
+                guesses[turn] += other.guesses[turn];
+                informationGained[turn] += other.informationGained[turn];
+                expectedInformation[turn] += other.expectedInformation[turn];
+                bestInformation[turn] += other.bestInformation[turn];
+                candidatesLeft[turn] += other.candidatesLeft[turn];
+            }
+        }
+
+        // Retrieves the number of games analysed.
+        public long getGames() {
+            return games;
+        }
+
+        // Retrieves the number of games won.
+        public long getWonGames() {
+            return wonGames;
+        }
+
+        // Retrieves the number of lines that could not be replayed.
+        public long getMalformedGames() {
+            return malformedGames;
+        }
+
+        // Retrieves the number of guesses graded.
+        public long getGuesses() {
+            return Arrays.stream(guesses).sum();
+        }
+
+        // Retrieves the average number of candidates left after the guesses of a turn, counted from 0.
+        public double getAverageCandidatesLeft(int turn) {
+            return guesses[turn] == 0 ? 0 : candidatesLeft[turn] / guesses[turn];
+        }
+
+        /**
+         * Prints the report.
+         * @param out Where to print.
+         * @param seconds Time the analysis took, used for the throughput line.
+         */
+        public void print(PrintStream out, double seconds) {
+            out.println("Numberle replay report");
+            out.printf("games: %d (won %d, malformed %d)%n", games, wonGames, malformedGames);
+            out.printf("guesses: %d in %.1f s (%.0f guesses/s)%n", getGuesses(), seconds, getGuesses() / Math.max(seconds, 1e-9));
+            out.println("turn\tguesses\tbits gained\tbits expected\tbest bits\tefficiency\tcandidates left");
+            for (int turn = 0; turn < MAX_TURNS; turn++) {
+                long n = guesses[turn];
+                if (n == 0) {
+                    continue;
+                }
+                double efficiency = bestInformation[turn] == 0 ? 1 : expectedInformation[turn] / bestInformation[turn];
+                out.printf("%s\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%.2f%n",
+                        turn == MAX_TURNS - 1 ? (turn + 1) + "+" : String.valueOf(turn + 1), n,
+                        informationGained[turn] / n, expectedInformation[turn] / n, bestInformation[turn] / n,
+                        efficiency, candidatesLeft[turn] / n);
+            }
+        }
+    }
+}
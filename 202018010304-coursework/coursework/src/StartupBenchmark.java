@@ -0,0 +1,96 @@
+// StartupBenchmark.java
+import javax.swing.*;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures cold startup of CLIApp and GUIApp, with and without the startup image.
+ * Every measurement runs in a fresh JVM, which reports the time from its own start, and from entering main, until
+ * the first game is playable: a NumberleModel with a started game for CLIApp, and the visible frame for GUIApp.
+ * GUIApp is skipped when no display is available.
+ * Usage: java StartupBenchmark [runs]
+ */
+public class StartupBenchmark {
+    private static final String PROBE = "probe";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && PROBE.equals(args[0])) {
+            probe(args[1]);
+            return;
+        }
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        // Build a fresh image of the current equations file, so the image runs never fall back to the text file
+        File image = File.createTempFile("numberle", ".img");
+        image.deleteOnExit();
+        StartupImage.write(NumberleModel.readEquationsFile(),
+                Files.readAllBytes(NumberleModel.getEquationsFile().toPath()), image);
+
+        System.out.println("app\tstartup\tmedian from JVM start (ms)\tmedian from main (ms)");
+        for (String app : new String[]{"cli", "gui"}) {
+            if (app.equals("gui") && GraphicsEnvironment.isHeadless()) {
+                System.out.println("gui\t-\tskipped, no display");
+                continue;
+            }
+            for (String mode : new String[]{"text", "image"}) {
+                String property = mode.equals("image") ? image.getAbsolutePath() : "none";
+                List<Double> fromStart = new ArrayList<>();
+                List<Double> fromMain = new ArrayList<>();
+                for (int run = 0; run < runs; run++) {
+                    double[] times = runProbe(app, property);
+                    fromStart.add(times[0]);
+                    fromMain.add(times[1]);
+                }
+                System.out.printf("%s\t%s\t%.1f\t%.1f%n", app, mode, median(fromStart), median(fromMain));
+            }
+        }
+    }
+
+    // Starts a JVM running the probe and reads the two times it prints.
+    private static double[] runProbe(String app, String imageProperty) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "-Dnumberle.image=" + imageProperty, StartupBenchmark.class.getName(), PROBE, app)
+                .redirectErrorStream(true)
+                .start();
+        String last = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                last = line;
+            }
+        }
+        if (process.waitFor() != 0 || last == null) {
+            throw new IllegalStateException("Startup probe failed: " + last);
+        }
+        String[] fields = last.split(" ");
+        return new double[]{Double.parseDouble(fields[0]), Double.parseDouble(fields[1])};
+    }
+
+    // Runs in the child JVM: reaches a playable game and prints the times since JVM start and since main.
+    private static void probe(String app) throws Exception {
+        long mainStart = System.nanoTime();
+        if (app.equals("gui")) {
+            SwingUtilities.invokeAndWait(GUIApp::createAndShowGUI);
+        } else {
+            INumberleModel model = new NumberleModel(true, false, true);
+            model.startNewGame();
+        }
+        double fromMain = (System.nanoTime() - mainStart) / 1e6;
+        double fromStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println(fromStart + " " + fromMain);
+        System.exit(0);
+    }
+
+    private static double median(List<Double> values) {
+        List<Double> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
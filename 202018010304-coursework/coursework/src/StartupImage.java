@@ -0,0 +1,341 @@
+// StartupImage.java
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary file holding everything derived from the equations file, so that startup maps one file
+ * instead of parsing the corpus and rebuilding the indexes:
+ * - the packed corpus, in file order,
+ * - the set of every valid guess of EquationCodec.MAX_SYMBOLS symbols, packed and sorted, which ReplayAnalyser
+ *   searches for the best guess,
+ * - the CandidateIndex bitsets of the corpus,
+ * - the DifficultyIndex measures and tiers of the corpus.
+ * The image records the length and CRC32 of the equations file it was built from, and is ignored when the file has
+ * changed since. It lives next to equations.txt as numberle.img; the system property numberle.image overrides the
+ * path, and the value "none" disables the image.
+ * Rebuild it with: java StartupImage [image-file]
+ */
+public final class StartupImage {
+    private static final int MAGIC = 0x4E4D424C; // "NMBL"
+    private static final int VERSION = 1;
+    private static final String IMAGE_FILE = "numberle.img";
+
+    private static StartupImage defaultImage; // Image of the equations file, mapped on first use
+    private static boolean defaultLoaded; // Whether the default image has been looked for
+
+    private final IntBuffer validGuesses; // Packed valid guesses, sorted
+    private final CandidateIndex candidateIndex;
+    private final DifficultyIndex difficultyIndex;
+    private final List<String> equations; // Corpus view unpacking each equation on access
+
+    private StartupImage(IntBuffer corpus, IntBuffer validGuesses, LongBuffer candidateBits,
+                         int[] guesses, double[] rarity, boolean[] ambiguous, int[][] tiers) {
+        this.validGuesses = validGuesses;
+        this.equations = new PackedList(corpus);
+        this.candidateIndex = new CandidateIndex(corpus.limit(), candidateBits);
+        this.difficultyIndex = new DifficultyIndex(equations, guesses, rarity, ambiguous, tiers);
+    }
+
+    /**
+     * Rebuilds the startup image from the equations file.
+     * Usage: java StartupImage [image-file]
+     */
+    public static void main(String[] args) throws IOException {
+        File imageFile = args.length > 0 ? new File(args[0]) : defaultImageFile();
+        File corpusFile = NumberleModel.getEquationsFile();
+        long start = System.nanoTime();
+        byte[] source = Files.readAllBytes(corpusFile.toPath());
+        // Parse the file itself rather than a previous image, which may be out of date
+        write(NumberleModel.readEquationsFile(), source, imageFile);
+        System.out.printf("Wrote %s (%d bytes) from %s in %.0f ms%n", imageFile, imageFile.length(), corpusFile,
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Retrieves the image of the equations file.
+     * @return The mapped image, or null if there is none, it is disabled, or it is out of date.
+     */
+    public static synchronized StartupImage getDefault() {
+        if (!defaultLoaded) {
+            defaultLoaded = true;
+            File imageFile = defaultImageFile();
+            if (imageFile != null && imageFile.exists()) {
+                try {
+                    File corpusFile = NumberleModel.getEquationsFile();
+                    NumberleModel.countFileAccess();
+                    byte[] source = corpusFile.exists() ? Files.readAllBytes(corpusFile.toPath()) : null;
+                    defaultImage = map(imageFile, source);
+                } catch (IOException | RuntimeException e) {
+                    // A missing or damaged image only costs startup time, the equations file is used instead
+                    defaultImage = null;
+                }
+            }
+        }
+        return defaultImage;
+    }
+
+    private static File defaultImageFile() {
+        String property = System.getProperty("numberle.image");
+        if ("none".equals(property)) {
+            return null;
+        }
+        if (property != null) {
+            return new File(property);
+        }
+        return new File(NumberleModel.getEquationsFile().getParentFile(), IMAGE_FILE);
+    }
+
+    /**
+     * Maps an image file.
+     * @param imageFile The image.
+     * @param source The content of the equations file, to check that the image is up to date, or null to skip the check.
+     * @return The image, or null if it was built from another equations file.
+     * @throws IOException if the file cannot be read or is not an image of this version.
+     */
+    public static StartupImage map(File imageFile, byte[] source) throws IOException {
+        NumberleModel.countFileAccess();
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(imageFile.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a version " + VERSION + " startup image: " + imageFile);
+        }
+        long sourceLength = buffer.getLong();
+        long sourceCrc = buffer.getLong();
+        if (source != null && (source.length != sourceLength || crc(source) != sourceCrc)) {
+            return null;
+        }
+        int size = buffer.getInt();
+        IntBuffer corpus = slice(buffer, 4L * size).asIntBuffer();
+        int validCount = buffer.getInt();
+        IntBuffer validGuesses = slice(buffer, 4L * validCount).asIntBuffer();
+        LongBuffer candidateBits = slice(buffer, 8L * CandidateIndex.SETS * CandidateIndex.wordsFor(size)).asLongBuffer();
+        int[] guesses = new int[size];
+        double[] rarity = new double[size];
+        boolean[] ambiguous = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            guesses[i] = buffer.getInt();
+            rarity[i] = buffer.getDouble();
+            ambiguous[i] = buffer.get() != 0;
+        }
+        int[][] tiers = new int[DifficultyIndex.Difficulty.values().length][];
+        for (int t = 0; t < tiers.length; t++) {
+            tiers[t] = new int[buffer.getInt()];
+            buffer.asIntBuffer().get(tiers[t]);
+            buffer.position(buffer.position() + 4 * tiers[t].length);
+        }
+        return new StartupImage(corpus, validGuesses, candidateBits, guesses, rarity, ambiguous, tiers);
+    }
+
+    // Cuts the next bytes of the buffer into their own buffer and moves past them.
+    private static ByteBuffer slice(ByteBuffer buffer, long bytes) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit((int) bytes);
+        buffer.position(buffer.position() + (int) bytes);
+        return slice;
+    }
+
+    /**
+     * Builds an image of a corpus and writes it.
+     * @param equations The corpus, every equation must be packable.
+     * @param source The content of the equations file the corpus comes from.
+     * @param imageFile Where to write the image.
+     * @throws IllegalArgumentException if an equation cannot be packed.
+     */
+    public static void write(List<String> equations, byte[] source, File imageFile) throws IOException {
+        int[] packed = new int[equations.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = EquationCodec.pack(equations.get(i));
+            if (packed[i] == EquationCodec.NOT_PACKABLE) {
+                throw new IllegalArgumentException("Equation cannot be packed: " + equations.get(i));
+            }
+        }
+        int[] validGuesses = enumerateValidGuesses();
+        LongBuffer candidateBits = CandidateIndex.build(equations).getBits();
+        DifficultyIndex difficulty = DifficultyIndex.build(equations);
+
+        File temporary = new File(imageFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.length);
+            out.writeLong(crc(source));
+            out.writeInt(packed.length);
+            for (int code : packed) {
+                out.writeInt(code);
+            }
+            out.writeInt(validGuesses.length);
+            for (int code : validGuesses) {
+                out.writeInt(code);
+            }
+            while (candidateBits.hasRemaining()) {
+                out.writeLong(candidateBits.get());
+            }
+            for (int i = 0; i < packed.length; i++) {
+                out.writeInt(difficulty.getGuesses(i));
+                out.writeDouble(difficulty.getRarity(i));
+                out.writeByte(difficulty.isAmbiguous(i) ? 1 : 0);
+            }
+            for (DifficultyIndex.Difficulty tier : DifficultyIndex.Difficulty.values()) {
+                int[] indexes = difficulty.getTierIndexes(tier);
+                out.writeInt(indexes.length);
+                for (int index : indexes) {
+                    out.writeInt(index);
+                }
+            }
+        }
+        // Replace the image in one step, so that a running game never maps a half written file
+        Files.move(temporary.toPath(), imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Enumerates every valid guess of exactly EquationCodec.MAX_SYMBOLS ASCII symbols. Each side is evaluated once,
+     * sides are grouped by length and value, and the equations are the pairs of sides of matching value whose
+     * lengths add up with '=' to the full width.
+     * @return The packed valid guesses, sorted.
+     */
+    static int[] enumerateValidGuesses() {
+        int sideLimit = EquationCodec.MAX_SYMBOLS - 2;
+        // Packed sides by length, then by value
+        List<Map<Integer, List<Integer>>> sides = new ArrayList<>();
+        sides.add(new HashMap<>());
+        char[] symbols = "0123456789+-*/".toCharArray();
+        for (int length = 1; length <= sideLimit; length++) {
+            Map<Integer, List<Integer>> byValue = new HashMap<>();
+            char[] side = new char[length];
+            int[] digits = new int[length];
+            int combinations = (int) Math.pow(symbols.length, length);
+            for (int n = 0; n < combinations; n++) {
+                for (int i = 0, rest = n; i < length; i++, rest /= symbols.length) {
+                    side[i] = symbols[rest % symbols.length];
+                }
+                int[] values = EquationEvaluator.evaluateSides(new String(side) + "=0");
+                if (values != null) {
+                    byValue.computeIfAbsent(values[0], value -> new ArrayList<>()).add(EquationCodec.pack(new String(side)));
+                }
+            }
+            sides.add(byValue);
+        }
+        int equals = EquationCodec.symbolCode('=');
+        int[] result = new int[1024];
+        int count = 0;
+        for (int leftLength = 1; leftLength <= sideLimit; leftLength++) {
+            int rightLength = EquationCodec.MAX_SYMBOLS - 1 - leftLength;
+            for (Map.Entry<Integer, List<Integer>> entry : sides.get(leftLength).entrySet()) {
+                List<Integer> rights = sides.get(rightLength).get(entry.getKey());
+                if (rights == null) {
+                    continue;
+                }
+                for (int left : entry.getValue()) {
+                    for (int right : rights) {
+                        if (count == result.length) {
+                            result = Arrays.copyOf(result, count * 2);
+                        }
+                        result[count++] = left | equals << (4 * leftLength) | right << (4 * (leftLength + 1));
+                    }
+                }
+            }
+        }
+        int[] valid = Arrays.copyOf(result, count);
+        Arrays.sort(valid);
+        return valid;
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    // Retrieves the corpus, in file order.
+    public List<String> getEquations() {
+        return equations;
+    }
+
+    // Retrieves the number of valid guesses in the image.
+    public int getValidGuessCount() {
+        return validGuesses.limit();
+    }
+
+    // Retrieves a copy of the packed valid guesses, sorted.
+    public int[] getValidGuesses() {
+        int[] result = new int[validGuesses.limit()];
+        validGuesses.duplicate().get(result);
+        return result;
+    }
+
+    /**
+     * Checks a guess against the valid guess set with a binary search.
+     * @param guess The guess.
+     * @return true if the guess is a valid equation of EquationCodec.MAX_SYMBOLS symbols.
+     */
+    public boolean isValidGuess(CharSequence guess) {
+        int packed = EquationCodec.pack(guess);
+        if (packed == EquationCodec.NOT_PACKABLE) {
+            return false;
+        }
+        int low = 0;
+        int high = validGuesses.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = validGuesses.get(middle);
+            if (value < packed) {
+                low = middle + 1;
+            } else if (value > packed) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Retrieves the candidate index of the corpus.
+    public CandidateIndex getCandidateIndex() {
+        return candidateIndex;
+    }
+
+    // Retrieves the difficulty index of the corpus.
+    public DifficultyIndex getDifficultyIndex() {
+        return difficultyIndex;
+    }
+
+    // Read-only list over the packed corpus, each equation is unpacked when it is accessed.
+    private static final class PackedList extends AbstractList<String> implements RandomAccess {
+        private final IntBuffer packed;
+
+        PackedList(IntBuffer packed) {
+            this.packed = packed;
+        }
+
+        @Override
+        public String get(int index) {
+            return EquationCodec.unpack(packed.get(index));
+        }
+
+        @Override
+        public int size() {
+            return packed.limit();
+        }
+    }
+}